@@ -170,6 +170,13 @@ public class RobotMap
    				                                                               DRIVE_MOTOR_FULL_THROTTLE_AVERAGE_SPEED_NATIVE_TICKS);
    		public static final int DRIVE_MOTOR_MOTION_ACCELERATION_NATIVE_TICKS = (int) (4346/1.5); // 0.26 g on wood//DRIVE_MOTOR_MOTION_CRUISE_SPEED_NATIVE_TICKS;
    		
+   		// Limits on each wheel when re-timing trajectories (see TrajectoryRetimer)
+   		// Same 80% of maximum speed and acceleration as Motion Magic above, in metric
+   		public static final double DRIVE_PROFILE_MAX_WHEEL_SPEED_M_PER_SEC = inch2Meter(0.80 * DRIVE_MAXIMUM_NO_LOAD_SPEED_IN_PER_SEC);
+   		public static final double DRIVE_PROFILE_MAX_WHEEL_ACCEL_M_PER_SEC2 = inch2Meter(WHEEL_CIRCUMFERENCE_INCHES * 
+   				(DRIVE_MOTOR_MOTION_ACCELERATION_NATIVE_TICKS / 
+   				 (double)DRIVE_MOTOR_NATIVE_TICKS_PER_REV) * 10);
+   		
    	/* ELEVATOR SUBSYSTEM */
    		public static final double ELEVATOR_SPROCKET_DIAMETER_INCHES  = 1.4323944878270580219199538703526;
    		public static final double ELEVATOR_SPROCKET_CIRCUMFERENCE_INCHES = (ELEVATOR_SPROCKET_DIAMETER_INCHES*Math.PI);
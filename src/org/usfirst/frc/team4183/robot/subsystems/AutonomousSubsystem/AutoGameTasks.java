@@ -1,13 +1,17 @@
 package org.usfirst.frc.team4183.robot.subsystems.AutonomousSubsystem;
 
+import java.util.Arrays;
+
 import edu.wpi.first.wpilibj.command.CommandGroup;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 
 import org.usfirst.frc.team4183.utils.*;
+import org.usfirst.frc.team4183.robot.Robot;
 import org.usfirst.frc.team4183.robot.RobotMap;
 import org.usfirst.frc.team4183.robot.subsystems.DriveSubsystem.*;
 import org.usfirst.frc.team4183.robot.subsystems.ElevatorSubsystem.ElevatorSubsystem;
 import org.usfirst.frc.team4183.robot.subsystems.ElevatorSubsystem.RepositionAuto;
+import org.usfirst.frc.team4183.robot.subsystems.IntakeSubsystem.DownIn;
 import org.usfirst.frc.team4183.robot.subsystems.IntakeSubsystem.UpShoot;
 /**
  *
@@ -33,7 +37,8 @@ public class AutoGameTasks extends CommandGroup
         // e.g. if Command1 requires chassis, and Command2 requires arm,
         // a CommandGroup containing them would require both the chassis and the
         // arm.
-		RobotTrajectory trajectory = PathPlans.getSelectedTrajectory();
+		// Resolved (and its Talon points built) when the game data arrived
+		RobotTrajectory trajectory = Robot.autonomousSubsystem.getPreparedTrajectory();
 		
 		// Assume all subsystems have been commanded to Idle at initialization
 		/// TODO: Why does this not work? addParallel(new ThroatHold());
@@ -43,19 +48,21 @@ public class AutoGameTasks extends CommandGroup
 			// to avoid an alliance member that has less control over their auto
 			addSequential(new Delay((long) (1000 * SmartDashboard.getNumber("Auto Delay(sec)", 0))));
 			
-			// Add a parallel lift command to trigger at some percentage (e.g., 60%) of trajectory completion
+			// Add a parallel lift command that starts the elevator when the time left on the
+			// path equals the predicted Motion Magic travel time, so the elevator reaches its
+			// preset as the drive arrives
 			// NOTE: **** If **** this does not work correctly then we will need to use sequences follows:
 			//		Drive Profile (Just Short of Scale)
 			//		Raise Elevator
 			//		MoveBy remaining difference
+			Robot.autonomousSubsystem.clearTrajectoryFollower();
 			if (trajectory.name.toLowerCase().contains("scale"))
 			{
-				//sets the elevator to this state which only moves the elevator to the high position if the the robot has completed 60% of the path
-				addParallel(new RepositionAuto(ElevatorSubsystem.ElevatorPresets.HIGH.getNativeTicks(),.6));
+				addParallel(new RepositionAuto(ElevatorSubsystem.ElevatorPresets.HIGH));
 			}
 			else if (trajectory.name.toLowerCase().contains("switch"))
 			{
-				addParallel(new RepositionAuto(ElevatorSubsystem.ElevatorPresets.MIDDLE.getNativeTicks(),.25));
+				addParallel(new RepositionAuto(ElevatorSubsystem.ElevatorPresets.MIDDLE));
 			}
 			addSequential(new DriveProfile(trajectory));
 						
@@ -66,7 +73,30 @@ public class AutoGameTasks extends CommandGroup
 				addSequential(new UpShoot(1));
 			}
 			
-			// TODO: If a two cube auto is desired then we would add the details here.
+			// Second cube: the chain that follows this path (if any) is driven without
+			// stopping at its seams; the elevator goes down as it starts, and the intake
+			// goes down and runs from the start of the last part (onto the cube).
+			// At the end the cube is lifted and shot over the fence in front.
+			RobotTrajectory[] secondCube = PathPlans.getChainAfter(trajectory.name);
+			if (secondCube != null)
+			{
+				double toLastPart_sec = 0.0;
+				for (int i = 0; i < secondCube.length - 1; ++i)
+				{
+					toLastPart_sec += secondCube[i].center.duration_sec();
+				}
+				double lastPart_sec = secondCube[secondCube.length - 1].center.duration_sec();
+				
+				CommandGroup intake = new CommandGroup();
+				intake.addSequential(new Delay((long) (1000 * toLastPart_sec)));
+				intake.addSequential(new DownIn(lastPart_sec + 0.5));
+				
+				addParallel(new RepositionAuto(ElevatorSubsystem.ElevatorPresets.BOTTOM.getNativeTicks(), 0.0));
+				addParallel(intake);
+				addSequential(new DriveProfile(secondCube[0], Arrays.copyOfRange(secondCube, 1, secondCube.length)));
+				addSequential(new RepositionAuto(ElevatorSubsystem.ElevatorPresets.MIDDLE.getNativeTicks(), 0.0));
+				addSequential(new UpShoot(1));
+			}
 		}
 		
 		// Be explicit about getting the intake back into idle
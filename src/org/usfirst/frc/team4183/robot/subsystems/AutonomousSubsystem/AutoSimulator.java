@@ -0,0 +1,405 @@
+package org.usfirst.frc.team4183.robot.subsystems.AutonomousSubsystem;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.usfirst.frc.team4183.robot.subsystems.AutonomousSubsystem.PathPlans.CrossingMode;
+import org.usfirst.frc.team4183.robot.subsystems.AutonomousSubsystem.PathPlans.PrimaryRole;
+import org.usfirst.frc.team4183.utils.FieldMap.ScoringLocation;
+import org.usfirst.frc.team4183.utils.Histogram;
+import org.usfirst.frc.team4183.utils.Positions.GenericPositions;
+import org.usfirst.frc.team4183.utils.Positions.StartingPosition;
+import org.usfirst.frc.team4183.utils.TrajectoryGenerator;
+
+import jaci.pathfinder.Waypoint;
+
+/*
+ * AutoSimulator is an offline Monte Carlo model of our autonomous plans, run
+ * on a laptop (not the robot) to put numbers behind the strategy choosers:
+ * 		java ... AutoSimulator [runsPerScenario] [seed]
+ *
+ * Every combination in the PlanTable (role, start, crossing mode, and FMS
+ * layout) is a scenario. Each scenario is run many times with a simple
+ * kinematic model:
+ * 		the drive runs a trapezoid (PathPlans config speed and acceleration,
+ * 		  derated by a random battery factor) over the length of the plan's
+ * 		  path, measured once along the curve fitted through its waypoints
+ * 		the elevator raises while driving; the cube is ejected after both
+ * 		random start delay, alignment, traffic when crossing the field, and
+ * 		  a chance of missing the target are drawn for each run
+ *
+ * Scenarios are spread over a ForkJoinPool; each one keeps its own Histogram
+ * and random stream (seeded from its index) so results are repeatable for a
+ * given seed no matter how the pool schedules them.
+ *
+ * The report gives, per strategy (role, start, crossing averaged over the four
+ * real FMS layouts) and per plan (trajectory), the chance of scoring and the
+ * time the cube is placed.
+ */
+public class AutoSimulator
+{
+	private static final double AUTO_PERIOD_sec = 15.0;
+	private static final int DEFAULT_RUNS = 10000;
+
+	// Random delays and mechanism times (sec), uniform between the two values
+	private static final double[] START_DELAY_sec = {0.0, 0.25};
+	private static final double[] SWITCH_RAISE_sec = {0.6, 1.0};
+	private static final double[] SCALE_RAISE_sec = {1.6, 2.4};
+	private static final double[] EJECT_sec = {0.3, 0.6};
+	private static final double[] DRIVE_SPEED_FACTOR = {0.85, 1.0};
+
+	// Alignment at the target (sec, exponentially distributed with this mean)
+	private static final double SWITCH_ALIGN_MEAN_sec = 0.2;
+	private static final double SCALE_ALIGN_MEAN_sec = 0.4;
+
+	// Crossing the field may meet another robot and wait for it
+	private static final double CROSSING_TRAFFIC_PROBABILITY = 0.3;
+	private static final double CROSSING_TRAFFIC_MEAN_sec = 0.8;
+
+	private static final double SWITCH_MISS_PROBABILITY = 0.05;
+	private static final double SCALE_MISS_PROBABILITY = 0.15;
+	private static final double CROSSING_MISS_PROBABILITY = 0.05;	// Added when crossing
+
+	// A path that moves further than this sideways crosses the field
+	private static final double CROSSING_SIDEWAYS_m = 3.0;
+
+	// Steps per waypoint pair when measuring a path (Simpson's rule, even)
+	private static final int PATH_STEPS = 64;
+
+	/** Length of a plan's path and whether it crosses the field */
+	static class Route
+	{
+		final double distance_m;
+		final boolean crossesField;
+
+		Route(double distance_m, boolean crossesField)
+		{
+			this.distance_m = distance_m;
+			this.crossesField = crossesField;
+		}
+	}
+
+	/** One PlanTable combination */
+	static class Scenario
+	{
+		final PrimaryRole role;
+		final StartingPosition start;
+		final CrossingMode crossing;
+		final GenericPositions switchPos;
+		final GenericPositions scalePos;
+		final PlanTable.Decision decision;
+		final ScoringLocation target;		// null if not scoring
+		final double distance_m;			// 0 if not moving
+		final boolean crossesField;
+
+		Scenario(PrimaryRole role, StartingPosition start, CrossingMode crossing,
+				 GenericPositions switchPos, GenericPositions scalePos,
+				 PlanTable.Decision decision, Map<String, Route> routes)
+		{
+			this.role = role;
+			this.start = start;
+			this.crossing = crossing;
+			this.switchPos = switchPos;
+			this.scalePos = scalePos;
+			this.decision = decision;
+			this.target = targetOf(decision.trajectoryName);
+
+			Route route = (decision.trajectoryName == null) ? null : routes.get(decision.trajectoryName);
+			distance_m = (route == null) ? 0.0 : route.distance_m;
+			crossesField = (route != null) && route.crossesField;
+		}
+
+		boolean isRealLayout()
+		{
+			return switchPos != GenericPositions.UNKNOWN && scalePos != GenericPositions.UNKNOWN;
+		}
+	}
+
+	/** Outcome of every run of a scenario (or a merge of several) */
+	static class Result
+	{
+		final Histogram placed_sec = new Histogram("Placed", 0.0, AUTO_PERIOD_sec, 150);
+		long runs = 0;
+		long scored = 0;
+		long moved = 0;
+
+		void add(Result other)
+		{
+			placed_sec.add(other.placed_sec);
+			runs += other.runs;
+			scored += other.scored;
+			moved += other.moved;
+		}
+	}
+
+	/**
+	 * @return where a trajectory scores, from the PlanTable naming pattern
+	 *         <left|right|center>Start<Left|Right><Switch|Scale>; null for the
+	 *         move only paths (or no path)
+	 */
+	static ScoringLocation targetOf(String trajectoryName)
+	{
+		if (trajectoryName == null || trajectoryName.endsWith("NoCross"))
+		{
+			return null;
+		}
+		int at = trajectoryName.indexOf("Start");
+		if (at < 0)
+		{
+			return null;
+		}
+		boolean left = trajectoryName.startsWith("Left", at + "Start".length());
+		if (trajectoryName.endsWith("Switch"))
+		{
+			return left ? ScoringLocation.LEFT_SWITCH : ScoringLocation.RIGHT_SWITCH;
+		}
+		if (trajectoryName.endsWith("Scale"))
+		{
+			return left ? ScoringLocation.LEFT_SCALE : ScoringLocation.RIGHT_SCALE;
+		}
+		return null;
+	}
+
+	/**
+	 * Runs a range of scenarios, splitting it until each task has one
+	 */
+	private static class Batch extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private final Scenario[] scenarios;
+		private final Result[] results;
+		private final int from, to;
+		private final int runs;
+		private final long seed;
+
+		Batch(Scenario[] scenarios, Result[] results, int from, int to, int runs, long seed)
+		{
+			this.scenarios = scenarios;
+			this.results = results;
+			this.from = from;
+			this.to = to;
+			this.runs = runs;
+			this.seed = seed;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if (to - from > 1)
+			{
+				int middle = (from + to) >>> 1;
+				invokeAll(new Batch(scenarios, results, from, middle, runs, seed),
+						  new Batch(scenarios, results, middle, to, runs, seed));
+				return;
+			}
+			SplittableRandom random = new SplittableRandom(seed * 31 + from);
+			Result result = new Result();
+			for (int i = 0; i < runs; ++i)
+			{
+				run(scenarios[from], random, result);
+			}
+			results[from] = result;
+		}
+	}
+
+	/**
+	 * One autonomous period of one scenario
+	 */
+	static void run(Scenario scenario, SplittableRandom random, Result result)
+	{
+		++result.runs;
+		if (scenario.distance_m <= 0.0)
+		{
+			return;
+		}
+		++result.moved;
+		if (scenario.target == null)
+		{
+			return;
+		}
+
+		boolean switchTarget = (scenario.target == ScoringLocation.LEFT_SWITCH ||
+				                scenario.target == ScoringLocation.RIGHT_SWITCH);
+
+		double speed = PathPlans.config.max_velocity * uniform(random, DRIVE_SPEED_FACTOR);
+		double acceleration = PathPlans.config.max_acceleration;
+		double drive_sec = uniform(random, START_DELAY_sec) +
+				           trapezoidTime(scenario.distance_m, speed, acceleration);
+		if (scenario.crossesField && random.nextDouble() < CROSSING_TRAFFIC_PROBABILITY)
+		{
+			drive_sec += exponential(random, CROSSING_TRAFFIC_MEAN_sec);
+		}
+		drive_sec += exponential(random, switchTarget ? SWITCH_ALIGN_MEAN_sec : SCALE_ALIGN_MEAN_sec);
+
+		double raise_sec = uniform(random, switchTarget ? SWITCH_RAISE_sec : SCALE_RAISE_sec);
+		double placed_sec = Math.max(drive_sec, raise_sec) + uniform(random, EJECT_sec);
+
+		double miss = switchTarget ? SWITCH_MISS_PROBABILITY : SCALE_MISS_PROBABILITY;
+		if (scenario.crossesField)
+		{
+			miss += CROSSING_MISS_PROBABILITY;
+		}
+		if (placed_sec <= AUTO_PERIOD_sec && random.nextDouble() >= miss)
+		{
+			++result.scored;
+			result.placed_sec.record(placed_sec);
+		}
+	}
+
+	/**
+	 * @return time to cover a distance from rest to rest with a trapezoid (or
+	 *         triangle) velocity profile
+	 */
+	static double trapezoidTime(double distance, double maxVelocity, double acceleration)
+	{
+		double rampDistance = maxVelocity * maxVelocity / acceleration;	// Up and down
+		if (distance < rampDistance)
+		{
+			return 2.0 * Math.sqrt(distance / acceleration);
+		}
+		return distance / maxVelocity + maxVelocity / acceleration;
+	}
+
+	private static double uniform(SplittableRandom random, double[] range)
+	{
+		return range[0] + (range[1] - range[0]) * random.nextDouble();
+	}
+
+	private static double exponential(SplittableRandom random, double mean)
+	{
+		return -mean * Math.log(1.0 - random.nextDouble());
+	}
+
+	/**
+	 * Measure every built-in path in PathPlans; a mirror is measured from the
+	 * path it reflects, which has the same length and sideways travel
+	 * @return the route of each path by trajectory name
+	 */
+	static Map<String, Route> measureRoutes()
+	{
+		Map<String, Waypoint[]> paths = new LinkedHashMap<>();
+		Map<String, Route> routes = new LinkedHashMap<>();
+		for (TrajectoryGenerator.PathSpec spec : PathPlans.builtInPathSpecs())
+		{
+			Waypoint[] path = (spec.mirrorOf == null) ? spec.path : paths.get(spec.mirrorOf);
+			if (path == null)
+			{
+				System.out.format("Path %s mirrors %s, which is not a built-in path\n", spec.name, spec.mirrorOf);
+				continue;
+			}
+			paths.put(spec.name, path);
+			routes.put(spec.name, measure(path));
+		}
+		return routes;
+	}
+
+	/**
+	 * Walk the quintic Hermite curve that Pathfinder fits between each pair of
+	 * waypoints (in a frame along the line between them)
+	 * @return the length along the curve and whether it crosses the field
+	 */
+	static Route measure(Waypoint[] path)
+	{
+		double length = 0.0;
+		double minY = 0.0;
+		double maxY = 0.0;
+		for (int i = 1; i < path.length; ++i)
+		{
+			Waypoint a = path[i-1];
+			Waypoint b = path[i];
+			double d = Math.hypot(b.x - a.x, b.y - a.y);
+			double angle = Math.atan2(b.y - a.y, b.x - a.x);
+			double t0 = Math.tan(Math.IEEEremainder(a.angle - angle, 2.0 * Math.PI));
+			double t1 = Math.tan(Math.IEEEremainder(b.angle - angle, 2.0 * Math.PI));
+			double c5 = -3.0 * (t0 + t1) / Math.pow(d, 4);
+			double c4 = (8.0 * t0 + 7.0 * t1) / Math.pow(d, 3);
+			double c3 = -(6.0 * t0 + 4.0 * t1) / (d * d);
+
+			double h = d / PATH_STEPS;
+			for (int k = 0; k <= PATH_STEPS; ++k)
+			{
+				double u = k * h;
+				double offset = ((c5 * u + c4) * u + c3) * u * u * u + t0 * u;
+				double slope = ((5.0 * c5 * u + 4.0 * c4) * u + 3.0 * c3) * u * u + t0;
+				double weight = (k == 0 || k == PATH_STEPS) ? 1.0 : ((k % 2 == 1) ? 4.0 : 2.0);
+				length += weight * h / 3.0 * Math.sqrt(1.0 + slope * slope);
+
+				double y = a.y + u * Math.sin(angle) + offset * Math.cos(angle);
+				minY = Math.min(minY, y);
+				maxY = Math.max(maxY, y);
+			}
+		}
+		return new Route(length, maxY - minY > CROSSING_SIDEWAYS_m);
+	}
+
+	public static void main(String[] args)
+	{
+		int runs = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_RUNS;
+		long seed = (args.length > 1) ? Long.parseLong(args[1]) : 4183;
+
+		Map<String, Route> routes = measureRoutes();
+		List<Scenario> list = new ArrayList<>();
+		new PlanTable().forEach((role, start, crossing, switchPos, scalePos, decision) ->
+			list.add(new Scenario(role, start, crossing, switchPos, scalePos, decision, routes)));
+		Scenario[] scenarios = list.toArray(new Scenario[list.size()]);
+		Result[] results = new Result[scenarios.length];
+
+		long startTime_ns = System.nanoTime();
+		ForkJoinPool pool = new ForkJoinPool();
+		pool.invoke(new Batch(scenarios, results, 0, scenarios.length, runs, seed));
+		pool.shutdown();
+		double elapsed_sec = (System.nanoTime() - startTime_ns) / 1.0e9;
+
+		// Strategies are what the drive team picks; plans are what the table runs
+		Map<String, Result> strategies = new LinkedHashMap<>();
+		Map<String, Result> plans = new LinkedHashMap<>();
+		for (int i = 0; i < scenarios.length; ++i)
+		{
+			Scenario s = scenarios[i];
+			if (s.isRealLayout())
+			{
+				strategies.computeIfAbsent(String.format("%-10s %-6s %-16s", s.role, s.start, s.crossing),
+						                   k -> new Result()).add(results[i]);
+			}
+			String plan = (s.decision.trajectoryName == null) ? "(no move)" : s.decision.trajectoryName;
+			plans.computeIfAbsent(plan, k -> new Result()).add(results[i]);
+		}
+
+		System.out.format("%d scenarios x %d runs in %.2f sec (%.0f runs/sec, %d threads)\n\n",
+				          scenarios.length, runs, elapsed_sec,
+				          scenarios.length * (double)runs / elapsed_sec, pool.getParallelism());
+		print("STRATEGY (over the 4 FMS layouts)", strategies);
+		print("PLAN", plans);
+	}
+
+	private static void print(String title, Map<String, Result> results)
+	{
+		System.out.format("%-36s %8s %8s %8s %8s %8s\n", title, "moved", "scored", "mean s", "p50 s", "p90 s");
+		for (Map.Entry<String, Result> entry : results.entrySet())
+		{
+			Result r = entry.getValue();
+			System.out.format("%-36s %7.1f%% %7.1f%% %8s %8s %8s\n",
+					          entry.getKey(),
+					          100.0 * r.moved / r.runs,
+					          100.0 * r.scored / r.runs,
+					          placedTime(r, r.placed_sec.getMean()),
+					          placedTime(r, r.placed_sec.getPercentile(0.5)),
+					          placedTime(r, r.placed_sec.getPercentile(0.9)));
+		}
+		System.out.println();
+	}
+
+	/**
+	 * @return the time formatted for the report, or "-" if nothing was placed
+	 */
+	private static String placedTime(Result r, double time_sec)
+	{
+		return (r.scored == 0) ? "-" : String.format("%.2f", time_sec);
+	}
+}
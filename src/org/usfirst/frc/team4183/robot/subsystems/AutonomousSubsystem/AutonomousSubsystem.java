@@ -1,21 +1,22 @@
 package org.usfirst.frc.team4183.robot.subsystems.AutonomousSubsystem;
 
 import java.util.List;
+import java.util.concurrent.Callable;
 
 import org.usfirst.frc.team4183.robot.Robot;
-import org.usfirst.frc.team4183.robot.RobotMap;
 import org.usfirst.frc.team4183.robot.subsystems.BitBucketsSubsystem;
 import org.usfirst.frc.team4183.robot.subsystems.AutonomousSubsystem.PathPlans.PathPlanChoice;
+import org.usfirst.frc.team4183.utils.FieldMap;
+import org.usfirst.frc.team4183.utils.GridPlanner;
 import org.usfirst.frc.team4183.utils.Positions;
-import org.usfirst.frc.team4183.utils.Positions.GenericPositions;
+import org.usfirst.frc.team4183.utils.PrimitiveTrajectory;
+import org.usfirst.frc.team4183.utils.RobotTrajectory;
 
-import edu.wpi.first.wpilibj.DriverStation;
 import edu.wpi.first.wpilibj.command.Command;
 import edu.wpi.first.wpilibj.command.Subsystem;
 import edu.wpi.first.wpilibj.smartdashboard.SendableChooser;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
-import jaci.pathfinder.Trajectory;
-import jaci.pathfinder.followers.EncoderFollower;
+import jaci.pathfinder.Waypoint;
 
 /**
  *
@@ -24,34 +25,70 @@ public class AutonomousSubsystem extends BitBucketsSubsystem
 {
 	
 	//these are used for the pathFollower
-	private EncoderFollower pathTracker;
-	private Trajectory lastSetTrajectory;
+	// The follower is a cursor of how many points the drive has executed on the
+	// current path; everything else is looked up from it in constant time
+	private int pointsExecuted;
+	private PrimitiveTrajectory lastSetTrajectory;
 	
+	// Re-planning is done off the Scheduler thread and checked in periodic()
+	private final Replanner replanner = new Replanner();
+	
+	// FMS game data, parsed once per change; the selected trajectory is
+	// resolved and prepared whenever it or the choosers change
+	private final GameDataMonitor gameData = new GameDataMonitor();
+	private PlanTable.Decision preparedDecision;
+	private RobotTrajectory preparedTrajectory;
+	
+	// Builds routes that are not in PathPlans (see requestRoute and RouteTest)
+	private final FieldMap fieldMap = new FieldMap();
+	private final GridPlanner gridPlanner = new GridPlanner(fieldMap);
+
+	// A route may finish with its bumper on the element it scores on (as the
+	// PathPlans paths do); any other contact fails the route
+	private final static double ROUTE_CHECK_END_ALLOWANCE_m = 0.1;
+
 	public enum AutoChoices
 	{
 		PLAY_GAME,
 		MOVE_TURN_TEST,
-		DRIVE_PROFILE_TEST
+		DRIVE_PROFILE_TEST,
+		ROUTE_TEST
 	}
 	private static SendableChooser<AutoChoices> autoChooser;
 	
 	public AutonomousSubsystem()
 	{						
-		
-		
+		// Prepare the trajectory as soon as the field layout is known rather
+		// than at the first autonomous loop
+		gameData.addListener(snapshot -> prepareSelectedTrajectory());
 	}
 	
-	public void initTrajectoryFollower(Trajectory aTrajectory)
+	public void initTrajectoryFollower(PrimitiveTrajectory aTrajectory)
 	{
 		lastSetTrajectory = aTrajectory;
-		pathTracker = new EncoderFollower(aTrajectory);
-		pathTracker.configureEncoder((int)Robot.driveSubsystem.getLeftEncoderUnits(), RobotMap.DRIVE_MOTOR_NATIVE_TICKS_PER_REV/4, RobotMap.WHEEL_CIRCUMFERENCE_INCHES/.0254);
-		pathTracker.configurePIDVA(1, 1, 1, 1, 1);
+		pointsExecuted = 0;
 	}
 	
-	public void updatePathFollower()
+	/**
+	 * Forget the last path (e.g., at the start of autonomous) so nothing is
+	 * triggered by a path that has already run
+	 */
+	public void clearTrajectoryFollower()
 	{
-		pathTracker.calculate((int)Robot.driveSubsystem.getLeftEncoderUnits());
+		initTrajectoryFollower(null);
+	}
+	
+	/**
+	 * Move the cursor up to the number of points the motion profile has executed
+	 * The cursor never moves backward.
+	 * @param executedPoints from the MotionProfileDriver
+	 */
+	public void updatePathFollower(int executedPoints)
+	{
+		if (lastSetTrajectory != null)
+		{
+			pointsExecuted = Math.max(pointsExecuted, Math.min(executedPoints, lastSetTrajectory.length()));
+		}
 	}
 	
 	//checks to how much the path has been complete and sees if it is greater than or equal to the passed in parameter
@@ -60,20 +97,75 @@ public class AutonomousSubsystem extends BitBucketsSubsystem
 		return getPercentageComplete() >= percentPathComplete;
 	}
 	
+	/**
+	 * @return index of the segment being executed (clamped to the last segment)
+	 */
+	public int getPathSegment()
+	{
+		if (lastSetTrajectory == null || lastSetTrajectory.length() == 0)
+		{
+			return 0;
+		}
+		return Math.min(pointsExecuted, lastSetTrajectory.length() - 1);
+	}
+	
+	/**
+	 * @return profile time completed on the current path (sec)
+	 */
+	public double getPathElapsedTime_sec()
+	{
+		if (lastSetTrajectory == null)
+		{
+			return 0.0;
+		}
+		return lastSetTrajectory.timeAfter(pointsExecuted);
+	}
+	
+	/**
+	 * @return profile time left on the current path (sec)
+	 */
+	public double getPathRemainingTime_sec()
+	{
+		if (lastSetTrajectory == null)
+		{
+			return 0.0;
+		}
+		return lastSetTrajectory.duration_sec() - getPathElapsedTime_sec();
+	}
+	
+	/**
+	 * Time to arrival trigger: an action that takes lead_sec should start when this is true
+	 * so it completes as the drive reaches the end of the path
+	 * @return true if a path is being followed and no more than lead_sec remains on it
+	 */
+	public boolean isArrivingWithin(double lead_sec)
+	{
+		return lastSetTrajectory != null && getPathRemainingTime_sec() <= lead_sec;
+	}
+	
+	/**
+	 * @return distance along the path center for the completed points (m)
+	 */
+	public double getPathDistance_m()
+	{
+		if (lastSetTrajectory == null || pointsExecuted == 0)
+		{
+			return 0.0;
+		}
+		return lastSetTrajectory.position[pointsExecuted - 1];
+	}
+	
+	/**
+	 * @return fraction (0.0 to 1.0) of the path time completed
+	 */
 	public double getPercentageComplete()
 	{
-		Trajectory.Segment currSegment = pathTracker.getSegment();
-		
-		int index = 0;
-		for (int i = 0; i < lastSetTrajectory.segments.length; i++)
+		if (lastSetTrajectory == null)
 		{
-			if (currSegment == lastSetTrajectory.segments[i])
-			{
-				index = i;
-				break;
-			}
+			return 0.0;
 		}
-		return index/lastSetTrajectory.segments.length;
+		double duration = lastSetTrajectory.duration_sec();
+		return (duration > 0.0) ? getPathElapsedTime_sec() / duration : 0.0;
 	}
 
 	public void initialize()
@@ -82,6 +174,7 @@ public class AutonomousSubsystem extends BitBucketsSubsystem
 		autoChooser.addDefault("PLAY GAME", AutoChoices.PLAY_GAME);
 		autoChooser.addObject("MOVE TURN TEST", AutoChoices.MOVE_TURN_TEST);
 		autoChooser.addObject("DRIVE PROFILE TEST", AutoChoices.DRIVE_PROFILE_TEST);
+		autoChooser.addObject("ROUTE TEST", AutoChoices.ROUTE_TEST);
 		SmartDashboard.putData( "Auto Choices", autoChooser);
 		
 		PathPlans.initialize();	
@@ -94,44 +187,63 @@ public class AutonomousSubsystem extends BitBucketsSubsystem
 		
 	public Positions.GenericPositions getSwitchPosition()
 	{
-		String gameData;
-		gameData = DriverStation.getInstance().getGameSpecificMessage();
-		if (gameData.length() > 0)
-		{
-			if (gameData.charAt(0) == 'L')
-			{
-				return GenericPositions.LEFT;
-			}
-			else
-			{
-				return GenericPositions.RIGHT;
-			}
-		}
-		else
-		{
-			return GenericPositions.UNKNOWN;
-		}
+		return gameData.getSnapshot().switchPos;
 	}
 
 	public Positions.GenericPositions getScalePosition()
 	{
-		String gameData;
-		gameData = DriverStation.getInstance().getGameSpecificMessage();
-		if (gameData.length() > 1)
+		return gameData.getSnapshot().scalePos;
+	}
+	
+	public GameDataMonitor getGameData()
+	{
+		return gameData;
+	}
+	
+	/**
+	 * Resolve the trajectory for the current choosers and game data and get it
+	 * ready to run (Talon points built, follower timing computed)
+	 * Called when the game data changes; does nothing if that trajectory is already prepared.
+	 */
+	private void prepareSelectedTrajectory()
+	{
+		PlanTable.Decision decision = PathPlans.getSelectedDecision();
+		if (decision == null)
 		{
-			if (gameData.charAt(1) == 'L')
-			{
-				return GenericPositions.LEFT;
-			}
-			else
+			return;		// Plans not initialized
+		}
+		RobotTrajectory trajectory = (decision.trajectoryName == null) ? null : PathPlans.getTrajectory(decision.trajectoryName);
+		if (decision == preparedDecision && trajectory == preparedTrajectory)
+		{
+			return;
+		}
+		
+		if (trajectory != null)
+		{
+			if (trajectory.leftPoints == null || trajectory.rightPoints == null)
 			{
-				return GenericPositions.RIGHT;
+				trajectory.buildTalonPoints();
 			}
+			trajectory.center.duration_sec();	// Builds the elapsed time table
 		}
-		else
+		preparedDecision = decision;
+		preparedTrajectory = trajectory;
+		System.out.println("Prepared: " + decision.description);
+	}
+	
+	/**
+	 * @return the trajectory for the current choosers and game data (null if the
+	 *         robot should not move), normally prepared before autonomous starts
+	 */
+	public RobotTrajectory getPreparedTrajectory()
+	{
+		prepareSelectedTrajectory();		// In case a chooser changed after the game data arrived
+		if (preparedDecision == null)
 		{
-			return GenericPositions.UNKNOWN;
+			return null;
 		}
+		System.out.println(preparedDecision.description);
+		return preparedTrajectory;
 	}
 	
     public void initDefaultCommand() 
@@ -183,19 +295,107 @@ public class AutonomousSubsystem extends BitBucketsSubsystem
 	@Override
 	public void periodic() 
 	{
-		// TODO Insert processing to decide if re-planning is needed, and to raise the flag
-		// Need to decide how to synchronize the plan updates (if needed) with the state processing.
-		// it is possible that the re-plan is a state that is held until the replan flag is dropped.
-		//
-		// NOTE: If planning will take a long time, then it should be pushed to a separate thread
-		// and monitored here, lowering the planning flag when the work is done. This keeps the
-		// WPI scheduler running as expected (allowing the system to function within the parameters
-		// established by the FMS, DriveStation, and the WPI architecture.
+		// Re-planning (if requested) runs on the Replanner thread; this only checks
+		// for the result, so the WPI scheduler keeps running as expected (allowing the
+		// system to function within the parameters established by the FMS, DriveStation,
+		// and the WPI architecture).
+		// States pick up a new plan via takeReplan() as part of their transition logic
+		// (e.g., RouteTest).
+		replanner.poll();
+		
+		// Game data normally arrives just before autonomous; a change prepares
+		// the trajectory through the listener
+		gameData.poll();
 		
+		SmartDashboard.putBoolean("Replanning", replanner.isReplanning());
+	}
+	
+	/**
+	 * Request a new trajectory be generated in the background
+	 * @param reason for logging
+	 * @param name of the new trajectory
+	 * @param path waypoints for the new trajectory
+	 * @param timeout_sec the result is discarded if not ready in this time
+	 * @return false if a re-plan is already in progress
+	 */
+	public boolean requestReplan(String reason, String name, Waypoint[] path, double timeout_sec)
+	{
+		return replanner.submit(reason, () -> PathPlans.generate(name, path), timeout_sec);
+	}
+	
+	/**
+	 * Request a route from a pose on the field to a scoring location be planned
+	 * and generated in the background
+	 * The plan fails (takeReplan() gets nothing) if there is no route, or if the
+	 * generated trajectory hits the field anywhere but at the very end.
+	 * @param reason for logging
+	 * @param name of the new trajectory
+	 * @param start the robot's pose on the field (see FieldMap)
+	 * @param target where to score
+	 * @param timeout_sec the result is discarded if not ready in this time
+	 * @return false if a re-plan is already in progress
+	 */
+	public boolean requestRoute(String reason, String name, FieldMap.Pose start, FieldMap.ScoringLocation target, double timeout_sec)
+	{
+		return replanner.submit(reason, () -> 
+		{
+			Waypoint[] path = gridPlanner.plan(start, FieldMap.scoringPose(target));
+			if (path == null)
+			{
+				throw new IllegalStateException("No route to " + target);
+			}
+			RobotTrajectory trajectory = PathPlans.generate(name, path);
+			// The fitted curve can cut a corner the planned route did not; a route
+			// known to hit the field fails the plan rather than being handed over
+			List<FieldMap.Collision> collisions = fieldMap.checkTrajectory(trajectory, start, ROUTE_CHECK_END_ALLOWANCE_m);
+			if (! collisions.isEmpty())
+			{
+				for (FieldMap.Collision collision : collisions)
+				{
+					System.out.println("ROUTE COLLISION: " + collision);
+				}
+				throw new IllegalStateException("Route to " + target + " hits the field: " + collisions.get(0));
+			}
+			return trajectory;
+		}, timeout_sec);
+	}
+	
+	public GridPlanner getGridPlanner()
+	{
+		return gridPlanner;
+	}
+	
+	/**
+	 * Request any re-planning work (e.g., splicing existing trajectories) in the background
+	 */
+	public boolean requestReplan(String reason, Callable<RobotTrajectory> work, double timeout_sec)
+	{
+		return replanner.submit(reason, work, timeout_sec);
+	}
+	
+	/** @return true while a re-plan is in progress */
+	public boolean isReplanning()
+	{
+		return replanner.isReplanning();
+	}
+	
+	/** @return the newest completed re-plan (once), or null */
+	public Replanner.Plan takeReplan()
+	{
+		return replanner.takePlan();
+	}
+	
+	public Replanner getReplanner()
+	{
+		return replanner;
 	}
 
 	public void start() {
 		
+		// Pick up game data that arrived since the last loop so the plan is
+		// ready before the first autonomous loop
+		gameData.poll();
+		
 		// Don't think of this as a command but rather a state
 		Idle initialCommand = new Idle();
 		initialCommand.start();		
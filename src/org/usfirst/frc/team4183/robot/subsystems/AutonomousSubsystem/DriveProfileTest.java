@@ -27,7 +27,7 @@ public class DriveProfileTest extends CommandGroup
         // a CommandGroup containing them would require both the chassis and the
         // arm.
 		// Assume all subsystems have been commanded to Idle at initialization
-		addSequential(new DriveProfile(PathPlans.testTrajectory0));	// Got from A to B
+		addSequential(new DriveProfile(PathPlans.getTrajectory("Test0")));	// Got from A to B
 	}
 
 }
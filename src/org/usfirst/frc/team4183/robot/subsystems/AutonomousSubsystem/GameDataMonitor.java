@@ -0,0 +1,107 @@
+package org.usfirst.frc.team4183.robot.subsystems.AutonomousSubsystem;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import org.usfirst.frc.team4183.utils.Positions.GenericPositions;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * GameDataMonitor watches the FMS game specific message (switch, scale, far
+ * switch sides, e.g. "LRL") and publishes it as an immutable Snapshot
+ *
+ * poll() is cheap enough to call every loop: the message is only parsed when
+ * it differs from the last one, and the parsed Snapshot is swapped in with a
+ * single write so any thread reads a consistent set of sides. Listeners are
+ * told of each change (on the polling thread) so work that depends on the
+ * field layout (e.g., choosing and preparing the trajectory) is done as soon
+ * as the data arrives rather than at the first autonomous loop.
+ */
+public class GameDataMonitor
+{
+	/** One parse of the game message; never modified */
+	public static class Snapshot
+	{
+		public final String message;
+		public final GenericPositions switchPos;
+		public final GenericPositions scalePos;
+		public final GenericPositions farSwitchPos;
+		public final double time_sec;		// FPGA time the message was seen
+
+		Snapshot(String message, double time_sec)
+		{
+			this.message = message;
+			this.switchPos = side(message, 0);
+			this.scalePos = side(message, 1);
+			this.farSwitchPos = side(message, 2);
+			this.time_sec = time_sec;
+		}
+
+		private static GenericPositions side(String message, int index)
+		{
+			if (message.length() > index)
+			{
+				return (message.charAt(index) == 'L') ? GenericPositions.LEFT : GenericPositions.RIGHT;
+			}
+			return GenericPositions.UNKNOWN;
+		}
+
+		/** @return true if the message has at least the switch and scale sides */
+		public boolean isValid()
+		{
+			return switchPos != GenericPositions.UNKNOWN && scalePos != GenericPositions.UNKNOWN;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format("'%s' switch=%s scale=%s", message, switchPos, scalePos);
+		}
+	}
+
+	private volatile Snapshot snapshot = new Snapshot("", 0.0);
+	private final List<Consumer<Snapshot>> listeners = new CopyOnWriteArrayList<>();
+
+	/**
+	 * @param listener called with the new Snapshot each time the message changes
+	 */
+	public void addListener(Consumer<Snapshot> listener)
+	{
+		listeners.add(listener);
+	}
+
+	/**
+	 * Check the message and publish a new Snapshot if it changed
+	 * @return true if it changed
+	 */
+	public synchronized boolean poll()
+	{
+		String message = DriverStation.getInstance().getGameSpecificMessage();
+		if (message == null)
+		{
+			message = "";
+		}
+		if (message.equals(snapshot.message))
+		{
+			return false;
+		}
+
+		Snapshot next = new Snapshot(message, Timer.getFPGATimestamp());
+		snapshot = next;
+		System.out.format("Time: %f: Game data %s\n", next.time_sec, next);
+		for (Consumer<Snapshot> listener : listeners)
+		{
+			listener.accept(next);
+		}
+		return true;
+	}
+
+	/** @return the latest Snapshot (sides UNKNOWN until a message arrives) */
+	public Snapshot getSnapshot()
+	{
+		return snapshot;
+	}
+}
@@ -56,6 +56,10 @@ public class Idle extends Command {
     				AutoMoveTurnTest move_turn = new AutoMoveTurnTest();
     				move_turn.start();
     				break;
+    			case ROUTE_TEST:
+    				RouteTest route = new RouteTest();
+    				route.start();
+    				break;
     			case DRIVE_PROFILE_TEST:
     				
 				default:
@@ -1,23 +1,44 @@
 package org.usfirst.frc.team4183.robot.subsystems.AutonomousSubsystem;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import org.usfirst.frc.team4183.robot.Robot;
 import org.usfirst.frc.team4183.robot.RobotMap;
+import org.usfirst.frc.team4183.utils.FieldMap;
+import org.usfirst.frc.team4183.utils.PathLibrary;
 import org.usfirst.frc.team4183.utils.Positions.StartingPosition;
-import org.usfirst.frc.team4183.utils.Positions;
 import org.usfirst.frc.team4183.utils.RobotTrajectory;
+import org.usfirst.frc.team4183.utils.TrajectoryGenerator;
+import org.usfirst.frc.team4183.utils.TrajectoryRetimer;
+import org.usfirst.frc.team4183.utils.TrajectoryStore;
 
+import edu.wpi.first.wpilibj.DriverStation;
+import edu.wpi.first.wpilibj.Timer;
 import edu.wpi.first.wpilibj.smartdashboard.SendableChooser;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 import jaci.pathfinder.Pathfinder;
 import jaci.pathfinder.Trajectory;
 import jaci.pathfinder.Waypoint;
-import jaci.pathfinder.modifiers.TankModifier;
 
 /*
  * PathPlans contains our pre-planned paths for autonomous operations
  * 
  * Each plan is converted into a trajectory at construction/initialization
  * so that it is ready for execution via Motion Profile processing.
+ * Generated trajectories are kept in a TrajectoryStore on flash so that
+ * only paths whose inputs have changed are regenerated at boot, and the
+ * TrajectoryGenerator processes the paths in parallel.
+ * Paths may also come from files (see PathLibrary), which replace the built-in
+ * path of the same name and are regenerated when changed while disabled.
+ * Every time trajectories are published they are swept against a FieldMap
+ * and any that would drive into a field element are reported.
  */
 public class PathPlans 
 {
@@ -83,6 +104,10 @@ public class PathPlans
 													 2.0, 			// Max acceleration m/s^2
 													 60.0);			// Max jerk m/s^3
 	
+	// Straight, steady runs of points are merged into longer points (up to 100 ms)
+	// as long as no dropped point is further than this from the merged motion
+	private final static double MAX_COMPRESSION_ERROR_m = 0.005;
+	
 	// Paths are defined as waypoints in x,y,heading
 	//
 	// heading is defined to be 0 parallel to the x-axis
@@ -126,6 +151,8 @@ public class PathPlans
     // *****************************************************************
     // SWITCH PATHS
     // *****************************************************************
+    // The side switch paths finish square to the side fence of the switch with
+    // the front bumper on it, across from the middle of the plate
     private static Waypoint[] centerStartRightSwitchPath = new Waypoint[]
     {
     		new Waypoint(0,            0,       Pathfinder.d2r(0)),
@@ -146,8 +173,8 @@ public class PathPlans
     		new Waypoint(0.864,     -0.699-0.3048,     Pathfinder.d2r(-45)),
     		new Waypoint(2.317,     -1.245-0.3048,     Pathfinder.d2r(0)),
     		
-    		new Waypoint(3.222, -1.245+0.3-0.3048, 	   Pathfinder.d2r(45)),
-    		new Waypoint(3.405,          0-0.3048,     Pathfinder.d2r(100))
+    		new Waypoint(3.142,            -1.550,     Pathfinder.d2r(0)),
+    		new Waypoint(3.784,            -0.908,     Pathfinder.d2r(90))
 	    		
     };
     
@@ -160,39 +187,40 @@ public class PathPlans
     		new Waypoint(0.864,     0.699-0.3048,     Pathfinder.d2r(45)),
     		new Waypoint(2.317,     1.245-0.3048,     Pathfinder.d2r(0)),
     		
-    		new Waypoint(3.222,     1.245-0.3-0.3048, Pathfinder.d2r(-45)),
-    		new Waypoint(3.405,         0,            Pathfinder.d2r(-100))
+    		new Waypoint(3.142,     1.550,            Pathfinder.d2r(0)),
+    		new Waypoint(3.784,     0.908,            Pathfinder.d2r(-90))
     };
 
+    // The crossing paths run behind the switch (midway between it and the
+    // platform), come back along the far lane and turn down onto the side fence.
+    // The on-field x/y corrections that used to be added to the last waypoints
+    // are folded in: the waypoints are where the robot is meant to be on the field.
     private static Waypoint[] rightStartLeftSwitchPath = new Waypoint[]
     {
     		new Waypoint(0,              0,        		Pathfinder.d2r(0)),
     		new Waypoint(0.864,     -0.699-0.3048, 		Pathfinder.d2r(-45)),
     		new Waypoint(2.317,     -1.245-0.3048, 		Pathfinder.d2r(0)),
     		
-    		new Waypoint(4.318,         -1.245-0.3048, 		Pathfinder.d2r(0)),
-    		new Waypoint(5.182,          0.254-0.3048,  	Pathfinder.d2r(90)),
-    		new Waypoint(5.182,          3.937-0.3048,  	Pathfinder.d2r(90)),
-    		new Waypoint(4.318+0.3048,   5.436-3*0.3048,  	Pathfinder.d2r(180)),
-    		new Waypoint(3.600+0.3048,   5.136-3*0.3048,  	Pathfinder.d2r(225)),
-    		new Waypoint(3.405+0.3048,   4.191-3*0.3048,  	Pathfinder.d2r(310))
+    		new Waypoint(4.318,         -1.550, 		Pathfinder.d2r(0)),
+    		new Waypoint(5.327,         -0.541,  		Pathfinder.d2r(90)),
+    		new Waypoint(5.327,          3.500,  		Pathfinder.d2r(90)),
+    		new Waypoint(4.556,          4.600,  		Pathfinder.d2r(180)),
+    		new Waypoint(3.784,          3.956,  		Pathfinder.d2r(270))
 	    		
     };
     
     // Again, a mirror but not programmatically just in case
-    // NOTE: Includes y-biases observed
     private static Waypoint[] leftStartRightSwitchPath = new Waypoint[]
     {
-    		new Waypoint(0,              0,               Pathfinder.d2r(0)),	// NOTE: y-bias
-    		new Waypoint(0.864,      0.699,               Pathfinder.d2r(45)),
-    		new Waypoint(1.817+0.5,  1.245,               Pathfinder.d2r(0)),
+    		new Waypoint(0,              0,               Pathfinder.d2r(0)),
+    		new Waypoint(0.864,      0.699+0.3048,        Pathfinder.d2r(45)),
+    		new Waypoint(2.317,      1.245+0.3048,        Pathfinder.d2r(0)),
     		
-    		new Waypoint(4.318,          1.245, 	      Pathfinder.d2r(0)),
-    		new Waypoint(5.182,         -0.254,    		  Pathfinder.d2r(-90)),
-    		new Waypoint(5.182,         -3.937,           Pathfinder.d2r(-90)),
-    		new Waypoint(4.318+0.3048,  -5.436+2*0.3048,  Pathfinder.d2r(-180)),
-    		new Waypoint(3.600+0.3048,  -5.136+2*0.3048,  Pathfinder.d2r(-225)),
-    		new Waypoint(3.405+0.3048,  -4.191+2*0.3048,  Pathfinder.d2r(-310))
+    		new Waypoint(4.318,          1.550, 	      Pathfinder.d2r(0)),
+    		new Waypoint(5.327,          0.541,    		  Pathfinder.d2r(-90)),
+    		new Waypoint(5.327,         -3.500,           Pathfinder.d2r(-90)),
+    		new Waypoint(4.556,         -4.600,           Pathfinder.d2r(-180)),
+    		new Waypoint(3.784,         -3.956,           Pathfinder.d2r(-270))
 	    		
     };
     
@@ -204,18 +232,14 @@ public class PathPlans
         new Waypoint(0,                     0,     Pathfinder.d2r(0)),
         new Waypoint(0.864,            -1.004,     Pathfinder.d2r(-45)),
         new Waypoint(2.317,            -1.550,     Pathfinder.d2r(0)),
-        new Waypoint(5.508,            -1.550,     Pathfinder.d2r(0)),
-        new Waypoint(6.682,            -0.376,     Pathfinder.d2r(45))
+        new Waypoint(4.318,            -1.550,     Pathfinder.d2r(0)),
+        new Waypoint(5.508,            -0.667,     Pathfinder.d2r(0)),
+        new Waypoint(6.544,            -0.667,     Pathfinder.d2r(0))	// Square to the plate, beside the platform
     };
 
-    private static Waypoint[] leftStartLeftScalePath = new Waypoint[]
-    {
-        new Waypoint(0,                     0,     Pathfinder.d2r(0)),
-        new Waypoint(0.864,             1.004,     Pathfinder.d2r(45)),
-        new Waypoint(2.317,             1.550,     Pathfinder.d2r(0)),
-        new Waypoint(5.508,             1.550,     Pathfinder.d2r(0)),
-        new Waypoint(6.682,             0.376,     Pathfinder.d2r(-45))
-    };
+    // The left start scale paths are exact left/right mirrors of the right start
+    // paths; they are reflected from the generated right start trajectories
+    // (see the TrajectoryGenerator.PathSpec.mirror calls in initialize)
     
     private static Waypoint[] rightStartLeftScalePath = new Waypoint[]
     {
@@ -224,55 +248,86 @@ public class PathPlans
         new Waypoint(2.317, 	       -1.550, 		Pathfinder.d2r(0)),
 
         new Waypoint(4.318,            -1.550, 		Pathfinder.d2r(0)),
-        new Waypoint(5.182,       	   -0.051,  	Pathfinder.d2r(90)),
-        new Waypoint(5.182,             3.632,  	Pathfinder.d2r(90)),
-        new Waypoint(4.623,             4.522,   	Pathfinder.d2r(90)),
+        new Waypoint(5.327,       	   -0.541,  	Pathfinder.d2r(90)),
+        new Waypoint(5.327,             2.700,  	Pathfinder.d2r(90)),
 
-        new Waypoint(5.062,   	         5.088,  	Pathfinder.d2r(0)),
-        new Waypoint(5.812,              5.088,  	Pathfinder.d2r(0)),
-        new Waypoint(6.790,              4.110,  	Pathfinder.d2r(-45))
+        new Waypoint(6.100,   	         3.715,  	Pathfinder.d2r(0)),
+        new Waypoint(6.544,              3.715,  	Pathfinder.d2r(0))
 
     };
-    
-    private static Waypoint[] leftStartRightScalePath = new Waypoint[]
+
+    // ***************************************************************************
+    // SECOND CUBE PATHS
+    // ***************************************************************************
+    // Chained after the side switch paths (see chains): back off the side fence,
+    // go around behind the switch and drive onto the end cube of the row along the
+    // back fence, finishing square to the fence to score it over the back.
+    // The left side paths are mirrors of these.
+    private static Waypoint[] rightSwitchBackOutPath = new Waypoint[]	// Driven backward
     {
-        new Waypoint(0,                     0, 		Pathfinder.d2r(0)),
-        new Waypoint(0.864,             1.004, 		Pathfinder.d2r(45)),
-        new Waypoint(2.317, 	        1.550, 		Pathfinder.d2r(0)),
+        new Waypoint(0,                     0,     Pathfinder.d2r(0)),
+        new Waypoint(0.700,                 0,     Pathfinder.d2r(0))
+    };
 
-        new Waypoint(4.318,             1.550, 		Pathfinder.d2r(0)),
-        new Waypoint(5.182,       	    0.051,  	Pathfinder.d2r(-90)),
-        new Waypoint(5.182,            -3.632,  	Pathfinder.d2r(-90)),
-        new Waypoint(4.623,            -4.522,   	Pathfinder.d2r(-90)),
+    private static Waypoint[] rightSwitchAroundPath = new Waypoint[]
+    {
+        new Waypoint(0,                     0,     Pathfinder.d2r(0)),
+        new Waypoint(0.424,            -0.424,     Pathfinder.d2r(-90)),
+        new Waypoint(0.424,            -1.333,     Pathfinder.d2r(-90)),	// Under the switch corner
+        new Waypoint(0.874,            -1.783,     Pathfinder.d2r(0))		// Beside the platform
+    };
 
-        new Waypoint(5.062,   	        -5.088,  	Pathfinder.d2r(0)),
-        new Waypoint(5.812,             -5.088,  	Pathfinder.d2r(0)),
-        new Waypoint(6.790,             -4.110,  	Pathfinder.d2r(45))
+    private static Waypoint[] rightSwitchEndCubePath = new Waypoint[]
+    {
+        new Waypoint(0,                     0,     Pathfinder.d2r(0)),
+        new Waypoint(0.480,             0.410,     Pathfinder.d2r(90))		// Cube in the intake
+    };
 
-    };    
-        
-    public static RobotTrajectory testTrajectory0;
-    
-    // *************************** MOTION ONLY TRAJECTORIES ************************
-    public static RobotTrajectory leftStartMoveOnlyTrajectory;
-    public static RobotTrajectory rightStartMoveOnlyTrajectory;
+    // Paths that run back to back in the Talons (see DriveProfile), each after
+    // the end of the path it follows
+    private static class Chain
+    {
+    	final String name;
+    	final String follows;
+    	final String[] parts;
+
+    	Chain(String name, String follows, String... parts)
+    	{
+    		this.name = name;
+    		this.follows = follows;
+    		this.parts = parts;
+    	}
+    }
+
+    private static final Chain[] chains =
+    {
+    	new Chain("rightSwitchSecondCube", "rightStartRightSwitch", "rightSwitchBackOut", "rightSwitchAround", "rightSwitchEndCube"),
+    	new Chain("leftSwitchSecondCube",  "leftStartLeftSwitch",   "leftSwitchBackOut",  "leftSwitchAround",  "leftSwitchEndCube")
+    };
 
-    // *************************** SWITCH TRAJECTORIES ************************
-    public static RobotTrajectory rightStartRightSwitchTrajectory;
-    public static RobotTrajectory leftStartLeftSwitchTrajectory;
+    // Every trajectory by name (see getTrajectory), replaced as a whole when published
+    private static volatile Map<String, RobotTrajectory> library = Collections.emptyMap();
     
-    public static RobotTrajectory centerStartRightSwitchTrajectory;
-    public static RobotTrajectory centerStartLeftSwitchTrajectory;
+    // Plan decision for every combination of the choosers and FMS data
+    private static PlanTable planTable;
     
-    public static RobotTrajectory rightStartLeftSwitchTrajectory;
-    public static RobotTrajectory leftStartRightSwitchTrajectory;
+    // Every path by name: built in, then replaced or added by the library files
+    private static final Map<String, TrajectoryGenerator.PathSpec> builtInSpecs = new LinkedHashMap<>();
+    private static final Map<String, TrajectoryGenerator.PathSpec> pathSpecs = new LinkedHashMap<>();
+    private static PathLibrary pathLibrary;
+    private static PathLibrary.Watcher pathWatcher;
+    private final static long PATH_WATCH_INTERVAL_MSEC = 1000;
     
-    // *************************** SCALE TRAJECTORIES ************************
-    public static RobotTrajectory rightStartRightScaleTrajectory;
-    public static RobotTrajectory leftStartLeftScaleTrajectory;
-        
-    public static RobotTrajectory rightStartLeftScaleTrajectory;
-    public static RobotTrajectory leftStartRightScaleTrajectory;
+    // Field elements for checking the paths; running into the element being
+    // scored on is allowed within this distance of the end of a path (about one
+    // bumper depth, so a path may finish with its bumper on the fence)
+    private static final FieldMap fieldMap = new FieldMap();
+    private final static double FIELD_CHECK_END_ALLOWANCE_m = 0.1;
+    
+    // Binary copies of the trajectories on flash to avoid regenerating at every boot
+    private static TrajectoryStore store;
+    private static TrajectoryGenerator generator;
+    private static TrajectoryRetimer retimer;
 
     public static void initialize()
     {
@@ -309,417 +364,453 @@ public class PathPlans
 		trustCenterChooser.addObject("DON'T TRUST", TrustCenterBot.DONT_TRUST);
 		SmartDashboard.putData("Trust Center Bot", trustCenterChooser);
 		
-    	/// TODO: May want to pre-compute these and store them as files to speed up startup
-    	
-	    
-	  //***********
-    	testTrajectory0 = new RobotTrajectory("Test0");//determines the path
-	    testTrajectory0.center = Pathfinder.generate(testPath0, config);
-	    
-	    
-	    // We don't need to store the modifier persistently
-	    TankModifier modifier = new TankModifier(testTrajectory0.center).modify(RobotMap.inch2Meter(RobotMap.WHEEL_TRACK_INCHES));
-	
-	    // Extract the right and left trajectories
-	    testTrajectory0.left = modifier.getLeftTrajectory();
-	    testTrajectory0.right = modifier.getRightTrajectory();
-	    
-	    
-	 //***********
-	    rightStartRightSwitchTrajectory = new RobotTrajectory("rightStartRightSwitch");
-	    rightStartRightSwitchTrajectory.center = Pathfinder.generate(rightStartRightSwitchPath, config);
-
-	    // We don't need to store the modifier persistently
-	    modifier = new TankModifier(rightStartRightSwitchTrajectory.center).modify(RobotMap.inch2Meter(RobotMap.WHEEL_TRACK_INCHES));
-	    
-	    // Extract the right and left trajectories
-	    rightStartRightSwitchTrajectory.left = modifier.getLeftTrajectory();
-	    rightStartRightSwitchTrajectory.right = modifier.getRightTrajectory();
-
-	    
-	//***********
-	    leftStartLeftSwitchTrajectory = new RobotTrajectory("leftStartLeftSwitch");
-	    leftStartLeftSwitchTrajectory.center = Pathfinder.generate(leftStartLeftSwitchPath, config);
-
-	    // We don't need to store the modifier persistently
-	    modifier = new TankModifier(leftStartLeftSwitchTrajectory.center).modify(RobotMap.inch2Meter(RobotMap.WHEEL_TRACK_INCHES));
-	    
-	    // Extract the right and left trajectories
-	    leftStartLeftSwitchTrajectory.left = modifier.getLeftTrajectory();
-	    leftStartLeftSwitchTrajectory.right = modifier.getRightTrajectory();
-	    
-	  
-	    
-	  //***********
-	    rightStartLeftSwitchTrajectory = new RobotTrajectory("rightStartLeftSwitch");
-	    rightStartLeftSwitchTrajectory.center = Pathfinder.generate(rightStartLeftSwitchPath, config);
-
-	    // We don't need to store the modifier persistently
-	    modifier = new TankModifier(rightStartLeftSwitchTrajectory.center).modify(RobotMap.inch2Meter(RobotMap.WHEEL_TRACK_INCHES));
-
-	    
-	    // Extract the right and left trajectories
-	    rightStartLeftSwitchTrajectory.left = modifier.getLeftTrajectory();
-	    rightStartLeftSwitchTrajectory.right = modifier.getRightTrajectory();
-
-	 //***********
-	    leftStartRightSwitchTrajectory = new RobotTrajectory("leftStartRightSwitch");
-	    leftStartRightSwitchTrajectory.center = Pathfinder.generate(leftStartRightSwitchPath, config);
-
-	    // We don't need to store the modifier persistently
-	    modifier = new TankModifier(leftStartRightSwitchTrajectory.center).modify(RobotMap.inch2Meter(RobotMap.WHEEL_TRACK_INCHES));
-
-	    
-	    // Extract the right and left trajectories
-	    leftStartRightSwitchTrajectory.left = modifier.getLeftTrajectory();
-	    leftStartRightSwitchTrajectory.right = modifier.getRightTrajectory();
-	    
-	    
-	  //***********
-	    centerStartRightSwitchTrajectory = new RobotTrajectory("centerStartRightSwitch");
-	    centerStartRightSwitchTrajectory.center = Pathfinder.generate(centerStartRightSwitchPath, config);
-
-	    modifier = new TankModifier(centerStartRightSwitchTrajectory.center).modify(RobotMap.inch2Meter(RobotMap.WHEEL_TRACK_INCHES));
+		// Trajectories are loaded from the store on flash whenever the stored key
+		// matches the current waypoints, config, and wheel track; otherwise the
+		// path is regenerated and the store is refreshed for the next boot.
+		// All paths are handed to the generator at once so they are processed
+		// in parallel, and nothing is published until every one of them is ready.
+		store = new TrajectoryStore();
+		generator = new TrajectoryGenerator(config, RobotMap.inch2Meter(RobotMap.WHEEL_TRACK_INCHES), store);
+		retimer = new TrajectoryRetimer(config.dt,
+				                        config.max_velocity,
+				                        config.max_acceleration,
+				                        RobotMap.DRIVE_PROFILE_MAX_WHEEL_SPEED_M_PER_SEC,
+				                        RobotMap.DRIVE_PROFILE_MAX_WHEEL_ACCEL_M_PER_SEC2);
+		generator.setRetimer(retimer);
+		generator.setCompression(MAX_COMPRESSION_ERROR_m);
+		double startTime_sec = Timer.getFPGATimestamp();
 		
-	    centerStartRightSwitchTrajectory.left = modifier.getLeftTrajectory();
-	    centerStartRightSwitchTrajectory.right = modifier.getRightTrajectory();
-	    
-	    //***********
-	    centerStartLeftSwitchTrajectory = new RobotTrajectory("centerStartLeftSwitch");
-	    centerStartLeftSwitchTrajectory.center = Pathfinder.generate(centerStartLeftSwitchPath, config);
-
-	    modifier = new TankModifier(centerStartLeftSwitchTrajectory.center).modify(RobotMap.inch2Meter(RobotMap.WHEEL_TRACK_INCHES));
+		List<TrajectoryGenerator.PathSpec> specs = builtInPathSpecs();
 		
-	    centerStartLeftSwitchTrajectory.left = modifier.getLeftTrajectory();
-	    centerStartLeftSwitchTrajectory.right = modifier.getRightTrajectory();
-	    
-	//***********
-	    rightStartRightScaleTrajectory = new RobotTrajectory("rightStartRightScale");
-	    rightStartRightScaleTrajectory.center = Pathfinder.generate(rightStartRightScalePath, config);
-
-	    // We don't need to store the modifier persistently
-	    modifier = new TankModifier(rightStartRightScaleTrajectory.center).modify(RobotMap.inch2Meter(RobotMap.WHEEL_TRACK_INCHES));
-	    
-	    // Extract the right and left trajectories
-	    rightStartRightScaleTrajectory.left = modifier.getLeftTrajectory();
-	    rightStartRightScaleTrajectory.right = modifier.getRightTrajectory();
-
-	//***********
-	    leftStartLeftScaleTrajectory = new RobotTrajectory("leftStartLeftScale");
-	    leftStartLeftScaleTrajectory.center = Pathfinder.generate(leftStartLeftScalePath, config);
-
-	    // We don't need to store the modifier persistently
-	    modifier = new TankModifier(leftStartLeftScaleTrajectory.center).modify(RobotMap.inch2Meter(RobotMap.WHEEL_TRACK_INCHES));
-	    
-	    // Extract the right and left trajectories
-	    leftStartLeftScaleTrajectory.left = modifier.getLeftTrajectory();
-	    leftStartLeftScaleTrajectory.right = modifier.getRightTrajectory();
-
-	//***********
-	    rightStartLeftScaleTrajectory = new RobotTrajectory("rightStartLefttScale");
-	    rightStartLeftScaleTrajectory.center = Pathfinder.generate(rightStartLeftScalePath, config);
-
-	    // We don't need to store the modifier persistently
-	    modifier = new TankModifier(rightStartLeftScaleTrajectory.center).modify(RobotMap.inch2Meter(RobotMap.WHEEL_TRACK_INCHES));
-	    
-	    // Extract the right and left trajectories
-	    rightStartLeftScaleTrajectory.left = modifier.getLeftTrajectory();
-	    rightStartLeftScaleTrajectory.right = modifier.getRightTrajectory();
-
-	//***********
-	    leftStartRightScaleTrajectory = new RobotTrajectory("leftStartRightScale");
-	    leftStartRightScaleTrajectory.center = Pathfinder.generate(leftStartRightScalePath, config);
-
-	    // We don't need to store the modifier persistently
-	    modifier = new TankModifier(leftStartRightScaleTrajectory.center).modify(RobotMap.inch2Meter(RobotMap.WHEEL_TRACK_INCHES));
-	    
-	    // Extract the right and left trajectories
-	    leftStartRightScaleTrajectory.left = modifier.getLeftTrajectory();
-	    leftStartRightScaleTrajectory.right = modifier.getRightTrajectory();
-	    
-	//********
-	    leftStartMoveOnlyTrajectory = new RobotTrajectory("leftStartRightSwitchNoCross");
-	    leftStartMoveOnlyTrajectory.center = Pathfinder.generate(leftStartMoveOnlyPath, config);
-
-	    modifier = new TankModifier(leftStartMoveOnlyTrajectory.center).modify(RobotMap.inch2Meter(RobotMap.WHEEL_TRACK_INCHES));
-	    
-	    leftStartMoveOnlyTrajectory.left = modifier.getLeftTrajectory();
-	    leftStartMoveOnlyTrajectory.right = modifier.getRightTrajectory();
-	    
-	    
-	 //********
-	    rightStartMoveOnlyTrajectory = new RobotTrajectory("rightStartLeftSwitchNoCross");
-	    rightStartMoveOnlyTrajectory.center = Pathfinder.generate(rightStartMoveOnlyPath, config);
-	    modifier = new TankModifier(rightStartMoveOnlyTrajectory.center).modify(RobotMap.inch2Meter(RobotMap.WHEEL_TRACK_INCHES));
-	    
-	    rightStartMoveOnlyTrajectory.left = modifier.getLeftTrajectory();
-	    rightStartMoveOnlyTrajectory.right = modifier.getRightTrajectory();
-	     
-	 }
-
-    // To trigger a call to the following function, create a Boolean object for the dashboard
-    // that is polled in robot periodic or something like it, if the value becomes true,
-    // set it back to false and then call this function.
-	public static void writeTrajectoriesToFiles()
-	{
-		// When called, will write each trajectory to a file
-		// Each RobotTrajectory instance has a name member that can be used as the file name
+		// Paths in the library files replace the built-in path of the same name
+		// (or add new ones); the files can be changed without a redeploy
+		pathLibrary = new PathLibrary();
+		for (TrajectoryGenerator.PathSpec spec : specs)
+		{
+			builtInSpecs.put(spec.name, spec);
+			pathSpecs.put(spec.name, spec);
+		}
+		for (TrajectoryGenerator.PathSpec spec : pathLibrary.load())
+		{
+			System.out.println("Path from library file: " + spec.name);
+			pathSpecs.put(spec.name, spec);
+		}
 		
-		// Each RobotTrajectory instance has a left and right member containing Segments
-		// An easier way to do this without needing to write a lot of code for each new trajectory is 
-		// to make an array of the above RobotTrajectory objects and simply loop through that array
-		// repeating the logic, below.
-
-		// Write the length as first value in file (integer then new line)
-		// Loop through the segments 
-		// 	Write dt, left.position, left.velocity, right.position, right.velocity (then new line)
+		// A bad library file must not stop the robot booting: the generator drops
+		// the paths it can't make, and the built-in path is put back in their place
+		// (the second pass loads everything else straight from the store)
+		Map<String, RobotTrajectory> trajectories = generator.generateAll(new ArrayList<>(pathSpecs.values()));
+		if (restoreBuiltIns(trajectories))
+		{
+			trajectories = generator.generateAll(new ArrayList<>(pathSpecs.values()));
+		}
+		publish(trajectories);
+		
+		System.out.format("Time: %f: %d trajectories ready in %.3f sec\n", 
+				          Timer.getFPGATimestamp(), 
+				          library.size(), 
+				          Timer.getFPGATimestamp() - startTime_sec);
 		
-		// Close file and move on to the next trajectory
+		// Build the decision table and make sure every plan it can choose was loaded
+		planTable = new PlanTable();
+		verifyPlans();
+		checkPaths(library.values());
+		checkChains();
 		
+		// While disabled, paths whose library files change are regenerated in the background
+		pathWatcher = new PathLibrary.Watcher(pathLibrary, PathPlans::updatePaths, PATH_WATCH_INTERVAL_MSEC);
+		pathWatcher.start();
 	}
-
-	public static RobotTrajectory getSelectedTrajectory() 
+	
+	/**
+	 * @return the built-in paths, each canonical path before its mirrors
+	 *         (also read offline, e.g., by AutoSimulator)
+	 */
+	static List<TrajectoryGenerator.PathSpec> builtInPathSpecs()
 	{
-		// A null trajectory means the robot will not move
-		RobotTrajectory trajectory = null;
+		List<TrajectoryGenerator.PathSpec> specs = new ArrayList<>();
+		specs.add(new TrajectoryGenerator.PathSpec("Test0", testPath0));
+		
+		// *************************** SWITCH TRAJECTORIES ************************
+		specs.add(new TrajectoryGenerator.PathSpec("rightStartRightSwitch", rightStartRightSwitchPath));
+		specs.add(new TrajectoryGenerator.PathSpec("leftStartLeftSwitch",   leftStartLeftSwitchPath));
 		
-		// Description as comments
-		//		Available Primary choices:
-		//			Switch
-		//			Scale
-		//          Exchange
-		//			Cross Line
-		//		Decisions for Switch and Scale:
-		//			If primary is on same side, proceed
-		//			If primary is on opposite side and crossing allowed, proceed
-		//			If primary is on opposite side and crossing DISALLOWED, check for secondary
-		//			If secondary is on same side, proceed
-		//			Secondary is on opposite side and crossing DISALLOWED so cross line and wait
-		//      Decision for Exchange:
-		//			If position is center, proceed
-		//			If position is right or left, cross line and wait
-		//
-		/// TODO: Consider exchange as choice?
-				
-		CrossingMode crossingMode = crossingModeChooser.getSelected();
+		specs.add(new TrajectoryGenerator.PathSpec("rightStartLeftSwitch",  rightStartLeftSwitchPath));
+		specs.add(new TrajectoryGenerator.PathSpec("leftStartRightSwitch",  leftStartRightSwitchPath));
 		
-		Positions.GenericPositions switchPos = Robot.autonomousSubsystem.getSwitchPosition();
-		Positions.GenericPositions scalePos = Robot.autonomousSubsystem.getScalePosition();
+		specs.add(new TrajectoryGenerator.PathSpec("centerStartRightSwitch", centerStartRightSwitchPath));
+		specs.add(new TrajectoryGenerator.PathSpec("centerStartLeftSwitch",  centerStartLeftSwitchPath));
 		
-		// NOTE: NOTE: NOTE:
-		// The following code is not pretty but clearly identifies the selection logic
-		// At some point, a student is free to improve on the selection logic by using
-		// referential techniques, tables, and such to traverse a series of choices.
+		// *************************** SCALE TRAJECTORIES ************************
+		// Left start scale paths are mirrors; the scales are per-side distance
+		// corrections (1.0 until a bias is observed on the field)
+		specs.add(new TrajectoryGenerator.PathSpec("rightStartRightScale", rightStartRightScalePath));
+		specs.add(TrajectoryGenerator.PathSpec.mirror("leftStartLeftScale", "rightStartRightScale", 1.0, 1.0));
 		
-		switch (primaryRollChooser.getSelected())
+		specs.add(new TrajectoryGenerator.PathSpec("rightStartLeftScale", rightStartLeftScalePath));
+		specs.add(TrajectoryGenerator.PathSpec.mirror("leftStartRightScale", "rightStartLeftScale", 1.0, 1.0));
+		
+		// *************************** SECOND CUBE TRAJECTORIES ************************
+		specs.add(TrajectoryGenerator.PathSpec.reversed("rightSwitchBackOut", rightSwitchBackOutPath));
+		specs.add(TrajectoryGenerator.PathSpec.mirror("leftSwitchBackOut", "rightSwitchBackOut", 1.0, 1.0));
+		specs.add(new TrajectoryGenerator.PathSpec("rightSwitchAround", rightSwitchAroundPath));
+		specs.add(TrajectoryGenerator.PathSpec.mirror("leftSwitchAround", "rightSwitchAround", 1.0, 1.0));
+		specs.add(new TrajectoryGenerator.PathSpec("rightSwitchEndCube", rightSwitchEndCubePath));
+		specs.add(TrajectoryGenerator.PathSpec.mirror("leftSwitchEndCube", "rightSwitchEndCube", 1.0, 1.0));
+		
+		// *************************** MOTION ONLY TRAJECTORIES ************************
+		specs.add(new TrajectoryGenerator.PathSpec("leftStartRightSwitchNoCross", leftStartMoveOnlyPath));
+		specs.add(new TrajectoryGenerator.PathSpec("rightStartLeftSwitchNoCross", rightStartMoveOnlyPath));
+		return specs;
+	}
+	
+	/**
+	 * Put the built-in path back for any library path that could not be generated
+	 * @return true if any were put back
+	 */
+	private static boolean restoreBuiltIns(Map<String, RobotTrajectory> trajectories)
+	{
+		boolean restored = false;
+		for (Map.Entry<String, TrajectoryGenerator.PathSpec> entry : pathSpecs.entrySet())
 		{
-		case SWITCH:
-			if (startingPositionChooser.getSelected() == StartingPosition.LEFT)
+			TrajectoryGenerator.PathSpec builtIn = builtInSpecs.get(entry.getKey());
+			if (! trajectories.containsKey(entry.getKey()) && builtIn != null && builtIn != entry.getValue())
 			{
-				if (switchPos == Positions.GenericPositions.LEFT)
-				{
-					System.out.println("LEFT START LEFT SWITCH (PRIMARY)");
-					trajectory = PathPlans.leftStartLeftSwitchTrajectory;
-				}
-				// explicitly check for right in case FMS has bug
-				else if (switchPos == Positions.GenericPositions.RIGHT && crossingMode == CrossingMode.ENABLE_CROSSING)
-				{
-					System.out.println("LEFT START RIGHT SWITCH (PRIMARY)");
-					trajectory = PathPlans.leftStartRightSwitchTrajectory;
-				}
-				else // Primary is out of reach or unspecified, check for secondary scoring chance
-				{
-					System.out.println("SWITCH SOLUTION (PRIMARY) EXCLUDED");
-					
-					if (scalePos == Positions.GenericPositions.LEFT)
-					{
-						System.out.println("LEFT START LEFT SCALE (SECONDARY)");
-						trajectory = PathPlans.leftStartLeftScaleTrajectory;
-					}
-					// In EXTREMELY unlikely cases the FMS could have an error on switch position tags
-					// We will be complete with the logic and check for crossing... there is also
-					// just as likely that this scale position data is corrupted as well, in which
-					// case we will fall through
-					else if (scalePos == Positions.GenericPositions.RIGHT && crossingMode == CrossingMode.ENABLE_CROSSING)
-					{
-						System.out.println("LEFT START RIGHT SCALE (SECONDARY)");
-						trajectory = PathPlans.leftStartRightScaleTrajectory;						
-					}
-					else // We got here because crossing was disabled and all solution are on the other side of field
-					{	 // or there was some error in the FMS and switch and scale sides are unknown
-						System.out.println("NO SOLUTION: DRIVING FORWARD - CROSSING LINE");
-					    trajectory = PathPlans.leftStartMoveOnlyTrajectory;
-					} // end if scale secondary on left side start
-				} // end if switch primary on left side start
+				System.out.println("Path " + entry.getKey() + " from library file not used; keeping the built-in path");
+				entry.setValue(builtIn);
+				restored = true;
 			}
-			else if (startingPositionChooser.getSelected() == StartingPosition.CENTER)
+		}
+		return restored;
+	}
+	
+	private static void verifyPlans()
+	{
+		List<String> problems = planTable.verify(PathPlans::getTrajectory);
+		for (String problem : problems)
+		{
+			System.out.println("PLAN ERROR: " + problem);
+		}
+		System.out.format("Plan table verified: %d unresolved combinations\n", problems.size());
+	}
+	
+	/**
+	 * Sweep the robot footprint along each trajectory from its starting position
+	 * and report any collisions with the field
+	 * The start is taken from the name (leftStart..., centerStart..., rightStart...);
+	 * paths without one (e.g., Test0) are not checked.
+	 */
+	private static void checkPaths(Collection<RobotTrajectory> trajectories)
+	{
+		long startTime_ns = System.nanoTime();
+		int checked = 0;
+		int collisions = 0;
+		for (RobotTrajectory trajectory : trajectories)
+		{
+			StartingPosition start = startingPositionOf(trajectory.name);
+			if (start == null)
 			{
-				if (switchPos == Positions.GenericPositions.LEFT)
-				{
-					System.out.println("CENTER START LEFT SWITCH (PRIMARY)");
-					trajectory = PathPlans.centerStartLeftSwitchTrajectory;
-					
-				}
-				else if (switchPos == Positions.GenericPositions.RIGHT)
-				{
-					System.out.println("CENTER START RIGHT SWITCH (PRIMARY)");
-					trajectory = PathPlans.centerStartRightSwitchTrajectory;
-				}
-				else
-				{
-					System.out.println("NO SOLUTION: FMS ERROR");
-					// NOTE: If FMS messes up, we won't move
-					/// TODO: Consider Exchange?
-				} // end if switch primary on center starts
+				continue;
 			}
-			else if (startingPositionChooser.getSelected() == StartingPosition.RIGHT)
+			++checked;
+			for (FieldMap.Collision collision : fieldMap.checkTrajectory(trajectory, 
+					                                                     FieldMap.startPose(start), 
+					                                                     FIELD_CHECK_END_ALLOWANCE_m))
 			{
-				if (switchPos == Positions.GenericPositions.RIGHT)
-				{
-					System.out.println("RIGHT START RIGHT SWITCH (PRIMARY)");
-					trajectory = PathPlans.rightStartRightSwitchTrajectory;
-				}
-				// explicitly check for left in case FMS has bug
-				else if (switchPos == Positions.GenericPositions.LEFT && crossingMode == CrossingMode.ENABLE_CROSSING)
-				{
-					System.out.println("RIGHT START LEFT SWITCH (PRIMARY)");
-					trajectory = PathPlans.rightStartLeftSwitchTrajectory;
-				}
-				else  // Primary is out of reach or unspecified, check for secondary scoring chance
-				{
-					System.out.println("SWITCH SOLUTION (PRIMARY) EXCLUDED");
-					
-					if (scalePos == Positions.GenericPositions.RIGHT)
-					{
-						System.out.println("RIGHT START RIGHT SCALE (SECONDARY)");
-						trajectory = PathPlans.rightStartRightScaleTrajectory;
-					}
-					// In EXTREMELY unlikely cases the FMS could have an error on switch position tags
-					// We will be complete with the logic and check for crossing... there is also
-					// just as likely that this scale position data is corrupted as well, in which
-					// case we will fall through
-					else if (scalePos == Positions.GenericPositions.LEFT && crossingMode == CrossingMode.ENABLE_CROSSING)
-					{
-						System.out.println("RIGHT START LEFT SCALE (SECONDARY)");
-						trajectory = PathPlans.rightStartLeftScaleTrajectory;
-						
-					}
-					else // We got here because crossing was disabled and all solution are on the other side of field
-					{	 // or there was some error in the FMS and switch and scale sides are unknown
-						System.out.println("NO SOLUTION: DRIVING FORWARD - CROSSING LINE");
-					    trajectory = PathPlans.rightStartMoveOnlyTrajectory;
-					} // end if scale secondary on right side start
-				} // end if switch primary on right side start
-			} // end if switch primary on any side start
-			break;
-			
-		case SCALE:
-			if (startingPositionChooser.getSelected() == StartingPosition.LEFT)
+				++collisions;
+				System.out.println("PATH COLLISION: " + collision);
+			}
+		}
+		System.out.format("Field check: %d paths, %d collisions in %.3f ms\n", 
+				          checked, 
+				          collisions, 
+				          (System.nanoTime() - startTime_ns) / 1.0e6);
+	}
+	
+	private static StartingPosition startingPositionOf(String name)
+	{
+		if (name.startsWith("leftStart"))
+			return StartingPosition.LEFT;
+		if (name.startsWith("centerStart"))
+			return StartingPosition.CENTER;
+		if (name.startsWith("rightStart"))
+			return StartingPosition.RIGHT;
+		return null;
+	}
+	
+	/**
+	 * Regenerate only the paths that changed (and any mirrors of them) and
+	 * publish them with the rest of the library
+	 * A path whose file was removed goes back to the built-in path, if there is
+	 * one, or is dropped. Called on the path watcher thread.
+	 */
+	private static synchronized void updatePaths(List<TrajectoryGenerator.PathSpec> changed, List<String> removed)
+	{
+		double startTime_sec = Timer.getFPGATimestamp();
+		
+		// Work on copies so nothing changes unless the result is published
+		Map<String, TrajectoryGenerator.PathSpec> specs = new LinkedHashMap<>(pathSpecs);
+		Map<String, RobotTrajectory> updated = new LinkedHashMap<>(library);
+		Set<String> changedNames = new HashSet<>();
+		Map<String, TrajectoryGenerator.PathSpec> toFit = new LinkedHashMap<>();
+		for (String name : removed)
+		{
+			TrajectoryGenerator.PathSpec builtIn = builtInSpecs.get(name);
+			if (builtIn != null)
 			{
-				if (scalePos == Positions.GenericPositions.LEFT)
+				System.out.println("Path file " + name + " removed; using the built-in path");
+				specs.put(name, builtIn);
+				if (builtIn.mirrorOf == null)
 				{
-					System.out.println("LEFT START LEFT SCALE (PRIMARY)");
-					trajectory = PathPlans.leftStartLeftScaleTrajectory;
+					toFit.put(name, builtIn);
 				}
-				// explicitly check for right in case FMS has bug
-				else if (scalePos == Positions.GenericPositions.RIGHT && crossingMode == CrossingMode.ENABLE_CROSSING)
-				{
-					System.out.println("LEFT START RIGHT SCALE (PRIMARY)");
-					trajectory = PathPlans.leftStartRightScaleTrajectory;
-				}
-				else // Primary is out of reach or unspecified
-				{
-					if (switchPos == Positions.GenericPositions.LEFT)
-					{
-						System.out.println("LEFT START LEFT SWITCH (SECONDARY)");
-						trajectory = PathPlans.leftStartLeftSwitchTrajectory;
-					}
-					// In EXTREMELY unlikely cases the FMS could have an error on scale position tags
-					// We will be complete with the logic and check for crossing... there is also
-					// just as likely that this switch position data is corrupted as well, in which
-					// case we will fall through
-					else if (switchPos == Positions.GenericPositions.RIGHT && crossingMode == CrossingMode.ENABLE_CROSSING)
-					{
-						System.out.println("LEFT START RIGHT SWITCH (SECONDARY)");
-						trajectory = PathPlans.leftStartRightSwitchTrajectory;	
-					}
-					else // We got here because crossing was disabled and all solution are on the other side of field
-					{	 // or there was some error in the FMS and switch and scale sides are unknown
-						System.out.println("NO SOLUTION: DRIVING FORWARD - CROSSING LINE");
-					    trajectory = PathPlans.leftStartMoveOnlyTrajectory;
-					} // end if switch positions secondary choices on left side start
-				} // end if scale positions primary choices on left side start
 			}
-			else if (startingPositionChooser.getSelected() == StartingPosition.RIGHT)
+			else
 			{
-				if (scalePos == Positions.GenericPositions.RIGHT)
-				{
-					System.out.println("RIGHT START RIGHT SCALE (PRIMARY)");
-					trajectory = PathPlans.rightStartRightScaleTrajectory;
-				}
-				// explicitly check for right in case FMS has bug
-				else if (scalePos == Positions.GenericPositions.LEFT && crossingMode == CrossingMode.ENABLE_CROSSING)
+				System.out.println("Path file " + name + " removed");
+				specs.remove(name);
+				updated.remove(name);
+			}
+			changedNames.add(name);
+		}
+		for (TrajectoryGenerator.PathSpec spec : changed)
+		{
+			specs.put(spec.name, spec);
+			changedNames.add(spec.name);
+			toFit.remove(spec.name);
+			if (spec.mirrorOf == null)
+			{
+				toFit.put(spec.name, spec);
+			}
+		}
+		
+		Map<String, RobotTrajectory> fitted = generator.generateAll(new ArrayList<>(toFit.values()));
+		updated.putAll(fitted);
+		List<RobotTrajectory> regenerated = new ArrayList<>(fitted.values());
+		
+		for (TrajectoryGenerator.PathSpec spec : specs.values())
+		{
+			if (spec.mirrorOf != null && (changedNames.contains(spec.name) || changedNames.contains(spec.mirrorOf)))
+			{
+				TrajectoryGenerator.PathSpec canonicalSpec = specs.get(spec.mirrorOf);
+				RobotTrajectory canonical = updated.get(spec.mirrorOf);
+				if (canonicalSpec == null || canonicalSpec.mirrorOf != null || canonical == null)
 				{
-					System.out.println("RIGHT START LEFT SCALE (PRIMARY)");
-					trajectory = PathPlans.rightStartLeftScaleTrajectory;
+					System.out.println("Path " + spec.name + " mirrors " + spec.mirrorOf + ", which is not a generated path");
+					updated.remove(spec.name);
+					continue;
 				}
-				else // Primary is out of reach or unspecified
-				{
-					if (switchPos == Positions.GenericPositions.RIGHT)
-					{
-						System.out.println("RIGHT START RIGHT SWITCH (SECONDARY)");
-						trajectory = PathPlans.rightStartRightSwitchTrajectory;
-					}
-					// In EXTREMELY unlikely cases the FMS could have an error on scale position tags
-					// We will be complete with the logic and check for crossing... there is also
-					// just as likely that this switch position data is corrupted as well, in which
-					// case we will fall through
-					else if (switchPos == Positions.GenericPositions.LEFT && crossingMode == CrossingMode.ENABLE_CROSSING)
-					{
-						System.out.println("RIGHT START LEFT SWITCH (SECONDARY)");
-						trajectory = PathPlans.rightStartLeftSwitchTrajectory;	
-					}
-					else // We got here because crossing was disabled and all solution are on the other side of field
-					{	 // or there was some error in the FMS and switch and scale sides are unknown
-						System.out.println("NO SOLUTION: DRIVING FORWARD - CROSSING LINE");
-					    trajectory = PathPlans.rightStartMoveOnlyTrajectory;
-					} // end if switch position secondary choices on right side start
-				} // end if scale positions primary choices on right side start		
-			} // end if scale primary on either side start
-			break;
-			
-		case EXCHANGE:
-			if (startingPositionChooser.getSelected() == StartingPosition.CENTER)
+				RobotTrajectory mirrored = canonical.mirror(spec.name, spec.leftScale, spec.rightScale);
+				updated.put(spec.name, mirrored);
+				regenerated.add(mirrored);
+			}
+		}
+		
+		// The watcher only starts an update while disabled, but regenerating takes
+		// time; never swap the library once the robot has been enabled
+		if (! DriverStation.getInstance().isDisabled())
+		{
+			System.out.println("Robot enabled during path update; not published, will retry when disabled");
+			pathLibrary.retry(changed, removed);
+			return;
+		}
+		pathSpecs.clear();
+		pathSpecs.putAll(specs);
+		publish(Collections.unmodifiableMap(updated));
+		System.out.format("Time: %f: %d changed and %d removed paths updated in %.3f sec\n", 
+				          Timer.getFPGATimestamp(), 
+				          changed.size(), 
+				          removed.size(), 
+				          Timer.getFPGATimestamp() - startTime_sec);
+		verifyPlans();
+		
+		checkPaths(regenerated);
+		checkChains();
+	}
+	
+	/**
+	 * Make a complete set of trajectories visible to the rest of the robot
+	 * The library reference is swapped in a single write so a reader (through
+	 * getTrajectory or getChainAfter) sees either the old set or the new set,
+	 * never a mix.
+	 */
+	private static void publish(Map<String, RobotTrajectory> trajectories)
+	{
+		library = withChains(trajectories);
+	}
+	
+	/**
+	 * Add the re-timed parts of every chain whose paths are all present
+	 * The parts are re-timed as one path so the speed carries across the seams
+	 * (see TrajectoryRetimer.retimeChain) and are kept under the chain's name
+	 * with their place in it (see getChainAfter); any left from an earlier set
+	 * are dropped first.
+	 * @return an unmodifiable copy of the trajectories with the chains
+	 */
+	private static Map<String, RobotTrajectory> withChains(Map<String, RobotTrajectory> trajectories)
+	{
+		Map<String, RobotTrajectory> result = new LinkedHashMap<>(trajectories);
+		for (Chain chain : chains)
+		{
+			for (int i = 0; i < chain.parts.length; ++i)
 			{
-				/// TODO:
+				result.remove(chainPartName(chain.name, i));
 			}
-			else
+			RobotTrajectory[] parts = chainParts(chain, trajectories);
+			if (parts == null)
 			{
-				System.out.println("DRIVER POSITION ERROR: Can only do exchange from center");
+				System.out.println("Chain " + chain.name + " is missing a path; not available");
+				continue;
 			}
-			break;
-			
-		case CROSS_LINE: //Done purposely
-			if (startingPositionChooser.getSelected() == StartingPosition.LEFT)
+			RobotTrajectory[] retimed = retimer.retimeChain(parts);
+			for (int i = 0; i < retimed.length; ++i)
 			{
-				System.out.println("CROSSING LINE ON LEFT SIDE");
-				trajectory = PathPlans.leftStartMoveOnlyTrajectory;
+				retimed[i].buildTalonPoints();
+				result.put(chainPartName(chain.name, i), retimed[i]);
 			}
-			else if (startingPositionChooser.getSelected() == StartingPosition.LEFT)
+		}
+		return Collections.unmodifiableMap(result);
+	}
+	
+	private static String chainPartName(String chainName, int index)
+	{
+		return chainName + "." + index;
+	}
+	
+	/**
+	 * @return the paths of a chain as generated, or null if any is missing
+	 */
+	private static RobotTrajectory[] chainParts(Chain chain, Map<String, RobotTrajectory> trajectories)
+	{
+		RobotTrajectory[] parts = new RobotTrajectory[chain.parts.length];
+		for (int i = 0; i < parts.length; ++i)
+		{
+			parts[i] = trajectories.get(chain.parts[i]);
+			if (parts[i] == null)
 			{
-				System.out.println("CROSSING LINE ON RIGHT SIDE");
-				trajectory = PathPlans.rightStartMoveOnlyTrajectory;
+				return null;
 			}
-			// else center and we don't move
-			/// TODO: Maybe we should, but better negotiation with alliance is prefered
-			break;
-		default:
-			System.out.println("RETURNING DRIVE FORWARD");
-			break;
 		}
-		
-		return trajectory;
-		
+		return parts;
+	}
+	
+	/**
+	 * Sweep the robot footprint along each chain from where the path it follows
+	 * ends, and report any collisions with the field
+	 */
+	private static void checkChains()
+	{
+		Map<String, RobotTrajectory> trajectories = library;
+		for (Chain chain : chains)
+		{
+			RobotTrajectory follows = trajectories.get(chain.follows);
+			RobotTrajectory[] parts = chainParts(chain, trajectories);
+			if (follows == null || parts == null)
+			{
+				continue;
+			}
+			FieldMap.Pose start = FieldMap.endPose(follows, FieldMap.startPose(startingPositionOf(chain.follows)));
+			for (FieldMap.Collision collision : fieldMap.checkChain(start, FIELD_CHECK_END_ALLOWANCE_m, parts))
+			{
+				System.out.println("CHAIN COLLISION: " + chain.name + ": " + collision);
+			}
+		}
+	}
+	
+	/**
+	 * @param name of the path the robot has just driven
+	 * @return the re-timed parts of the chain that follows it, in order (to be
+	 *         driven as new DriveProfile(parts[0], parts[1], ...)), or null if
+	 *         there is none
+	 */
+	public static RobotTrajectory[] getChainAfter(String name)
+	{
+		Map<String, RobotTrajectory> trajectories = library;
+		for (Chain chain : chains)
+		{
+			if (chain.follows.equals(name))
+			{
+				RobotTrajectory[] parts = new RobotTrajectory[chain.parts.length];
+				for (int i = 0; i < parts.length; ++i)
+				{
+					parts[i] = trajectories.get(chainPartName(chain.name, i));
+					if (parts[i] == null)
+					{
+						return null;
+					}
+				}
+				return parts;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * @param name of the trajectory
+	 * @return the trajectory, or null if there is no trajectory by that name
+	 */
+	public static RobotTrajectory getTrajectory(String name)
+	{
+		return library.get(name);
+	}
+
+	/**
+	 * Generate (or load) a trajectory with the same configuration as the plans
+	 * Used by re-planning; may take a while so don't call it from the Scheduler loop.
+	 * The result is not added to the library.
+	 */
+	public static RobotTrajectory generate(String name, Waypoint[] path)
+	{
+		return generator.generate(name, path);
+	}
+
+	// To trigger a call to the following function, create a Boolean object for the dashboard
+	// that is polled in robot periodic or something like it, if the value becomes true,
+	// set it back to false and then call this function.
+	//
+	// NOTE: generate() already keeps the store current; this simply forces every
+	// trajectory to be re-written (e.g., after clearing the store directory).
+	// The store holds the uncompressed trajectories, so they are written from the
+	// path specs by the generator rather than from the (compressed) library copies.
+	public static synchronized void writeTrajectoriesToFiles()
+	{
+		for (TrajectoryGenerator.PathSpec spec : pathSpecs.values())
+		{
+			// Mirrored trajectories are not stored; they are always derived at boot
+			if (spec.mirrorOf == null && ! generator.save(spec.name, spec.path))
+			{
+				System.out.println("Unable to store trajectory: " + spec.name);
+			}
+		}
+	}
+
+	/**
+	 * @return the starting position chosen on the dashboard, or null if the
+	 *         plans have not been initialized
+	 */
+	public static StartingPosition getSelectedStartingPosition()
+	{
+		return (startingPositionChooser == null) ? null : startingPositionChooser.getSelected();
+	}
+
+	/**
+	 * @return the plan for the current choosers and game data, or null if the
+	 *         plans have not been initialized
+	 */
+	public static PlanTable.Decision getSelectedDecision()
+	{
+		if (planTable == null)
+		{
+			return null;
+		}
+		// The decision for every combination was made at initialization (see PlanTable)
+		// so this is a single lookup; both sides come from the same game data snapshot
+		GameDataMonitor.Snapshot gameData = Robot.autonomousSubsystem.getGameData().getSnapshot();
+		return planTable.lookup(primaryRollChooser.getSelected(),
+				                startingPositionChooser.getSelected(),
+				                crossingModeChooser.getSelected(),
+				                gameData.switchPos,
+				                gameData.scalePos);
 	}
 
 }
\ No newline at end of file
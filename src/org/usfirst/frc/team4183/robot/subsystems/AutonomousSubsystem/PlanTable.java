@@ -0,0 +1,224 @@
+package org.usfirst.frc.team4183.robot.subsystems.AutonomousSubsystem;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import org.usfirst.frc.team4183.robot.subsystems.AutonomousSubsystem.PathPlans.CrossingMode;
+import org.usfirst.frc.team4183.robot.subsystems.AutonomousSubsystem.PathPlans.PrimaryRole;
+import org.usfirst.frc.team4183.utils.Positions.GenericPositions;
+import org.usfirst.frc.team4183.utils.Positions.StartingPosition;
+import org.usfirst.frc.team4183.utils.RobotTrajectory;
+
+/*
+ * PlanTable holds the autonomous plan decision for every combination of
+ * 		PrimaryRole x StartingPosition x CrossingMode x switch side x scale side
+ *
+ * The decisions are made once (at construction) by resolve(), which is the
+ * selection logic that used to be a nested switch in PathPlans; at auto start
+ * the choice is a single array lookup.
+ *
+ * Decision rules:
+ *		Switch and Scale:
+ *			If primary is on same side, proceed
+ *			If primary is on opposite side and crossing allowed, proceed
+ *			If primary is on opposite side and crossing DISALLOWED, check for secondary
+ *			If secondary is on same side, proceed
+ *			Secondary is on opposite side and crossing DISALLOWED so cross line and wait
+ *		Exchange:
+ *			If position is center, proceed
+ *			If position is right or left, cross line and wait
+ *		Cross Line:
+ *			Left or right drive forward; center does not move
+ */
+public class PlanTable
+{
+	/** The trajectory to run (by name) and why; a null name means don't move */
+	public static class Decision
+	{
+		public final String trajectoryName;
+		public final String description;
+
+		Decision(String trajectoryName, String description)
+		{
+			this.trajectoryName = trajectoryName;
+			this.description = description;
+		}
+	}
+
+	/** Called for each combination by forEach() */
+	public interface Visitor
+	{
+		void visit(PrimaryRole role, StartingPosition start, CrossingMode crossing,
+				   GenericPositions switchPos, GenericPositions scalePos, Decision decision);
+	}
+
+	private static final PrimaryRole[] ROLES = PrimaryRole.values();
+	private static final StartingPosition[] STARTS = StartingPosition.values();
+	private static final CrossingMode[] CROSSINGS = CrossingMode.values();
+	private static final GenericPositions[] SIDES = GenericPositions.values();
+
+	private final Decision[] table = new Decision[ROLES.length * STARTS.length * CROSSINGS.length * SIDES.length * SIDES.length];
+
+	public PlanTable()
+	{
+		for (PrimaryRole role : ROLES)
+			for (StartingPosition start : STARTS)
+				for (CrossingMode crossing : CROSSINGS)
+					for (GenericPositions switchPos : SIDES)
+						for (GenericPositions scalePos : SIDES)
+							table[index(role, start, crossing, switchPos, scalePos)] = resolve(role, start, crossing, switchPos, scalePos);
+	}
+
+	private static int index(PrimaryRole role, StartingPosition start, CrossingMode crossing,
+			                 GenericPositions switchPos, GenericPositions scalePos)
+	{
+		int i = role.ordinal();
+		i = i * STARTS.length + start.ordinal();
+		i = i * CROSSINGS.length + crossing.ordinal();
+		i = i * SIDES.length + switchPos.ordinal();
+		i = i * SIDES.length + scalePos.ordinal();
+		return i;
+	}
+
+	public Decision lookup(PrimaryRole role, StartingPosition start, CrossingMode crossing,
+			               GenericPositions switchPos, GenericPositions scalePos)
+	{
+		return table[index(role, start, crossing, switchPos, scalePos)];
+	}
+
+	public void forEach(Visitor visitor)
+	{
+		for (PrimaryRole role : ROLES)
+			for (StartingPosition start : STARTS)
+				for (CrossingMode crossing : CROSSINGS)
+					for (GenericPositions switchPos : SIDES)
+						for (GenericPositions scalePos : SIDES)
+							visitor.visit(role, start, crossing, switchPos, scalePos,
+									      lookup(role, start, crossing, switchPos, scalePos));
+	}
+
+	/**
+	 * Check that every decision that moves the robot names a trajectory we have
+	 * @param trajectories lookup by name (e.g., PathPlans::getTrajectory)
+	 * @return a description of each combination that does not resolve; empty if all do
+	 */
+	public List<String> verify(Function<String, RobotTrajectory> trajectories)
+	{
+		List<String> problems = new ArrayList<>();
+		forEach((role, start, crossing, switchPos, scalePos, decision) ->
+		{
+			if (decision.trajectoryName != null && trajectories.apply(decision.trajectoryName) == null)
+			{
+				problems.add(String.format("%s %s %s switch=%s scale=%s -> %s is not loaded",
+						                   role, start, crossing, switchPos, scalePos, decision.trajectoryName));
+			}
+		});
+		return problems;
+	}
+
+	/**
+	 * The selection logic for a single combination
+	 * This has no side effects so the whole table can be built and checked up front.
+	 */
+	static Decision resolve(PrimaryRole role, StartingPosition start, CrossingMode crossing,
+			                GenericPositions switchPos, GenericPositions scalePos)
+	{
+		boolean crossingEnabled = (crossing == CrossingMode.ENABLE_CROSSING);
+
+		switch (role)
+		{
+		case SWITCH:
+			if (start == StartingPosition.CENTER)
+			{
+				if (switchPos == GenericPositions.LEFT)
+				{
+					return new Decision("centerStartLeftSwitch", "CENTER START LEFT SWITCH (PRIMARY)");
+				}
+				else if (switchPos == GenericPositions.RIGHT)
+				{
+					return new Decision("centerStartRightSwitch", "CENTER START RIGHT SWITCH (PRIMARY)");
+				}
+				// NOTE: If FMS messes up, we won't move
+				/// TODO: Consider Exchange?
+				return new Decision(null, "NO SOLUTION: FMS ERROR");
+			}
+			return resolveSide(start, crossingEnabled, "Switch", switchPos, "Scale", scalePos);
+
+		case SCALE:
+			if (start == StartingPosition.CENTER)
+			{
+				return new Decision(null, "NO SOLUTION: SCALE FROM CENTER");
+			}
+			return resolveSide(start, crossingEnabled, "Scale", scalePos, "Switch", switchPos);
+
+		case EXCHANGE:
+			if (start == StartingPosition.CENTER)
+			{
+				/// TODO:
+				return new Decision(null, "EXCHANGE");
+			}
+			return new Decision(null, "DRIVER POSITION ERROR: Can only do exchange from center");
+
+		case CROSS_LINE:
+			if (start == StartingPosition.LEFT)
+			{
+				return new Decision("leftStartRightSwitchNoCross", "CROSSING LINE ON LEFT SIDE");
+			}
+			else if (start == StartingPosition.RIGHT)
+			{
+				return new Decision("rightStartLeftSwitchNoCross", "CROSSING LINE ON RIGHT SIDE");
+			}
+			// else center and we don't move
+			/// TODO: Maybe we should, but better negotiation with alliance is prefered
+			return new Decision(null, "CENTER: NOT CROSSING LINE");
+
+		default:
+			return new Decision(null, "NO SOLUTION");
+		}
+	}
+
+	/**
+	 * Primary and secondary choice from the left or right starting position
+	 * The trajectory names follow the pattern <left|right>Start<Left|Right><Switch|Scale>
+	 */
+	private static Decision resolveSide(StartingPosition start, boolean crossingEnabled,
+			                            String primary, GenericPositions primaryPos,
+			                            String secondary, GenericPositions secondaryPos)
+	{
+		GenericPositions near = (start == StartingPosition.LEFT) ? GenericPositions.LEFT : GenericPositions.RIGHT;
+		GenericPositions far  = (start == StartingPosition.LEFT) ? GenericPositions.RIGHT : GenericPositions.LEFT;
+
+		// explicitly check for the far side in case FMS has bug
+		if (primaryPos == near || (primaryPos == far && crossingEnabled))
+		{
+			return sideDecision(start, primaryPos, primary, "PRIMARY");
+		}
+
+		// Primary is out of reach or unspecified, check for secondary scoring chance
+		// In EXTREMELY unlikely cases the FMS could have an error on the primary position tags
+		// We will be complete with the logic and check for crossing... there is also
+		// just as likely that this secondary position data is corrupted as well, in which
+		// case we will fall through
+		if (secondaryPos == near || (secondaryPos == far && crossingEnabled))
+		{
+			return sideDecision(start, secondaryPos, secondary, "SECONDARY");
+		}
+
+		// We got here because crossing was disabled and all solution are on the other side of field
+		// or there was some error in the FMS and switch and scale sides are unknown
+		String moveOnly = (start == StartingPosition.LEFT) ? "leftStartRightSwitchNoCross" : "rightStartLeftSwitchNoCross";
+		return new Decision(moveOnly, "NO SOLUTION: DRIVING FORWARD - CROSSING LINE");
+	}
+
+	private static Decision sideDecision(StartingPosition start, GenericPositions target, String element, String rank)
+	{
+		String from = (start == StartingPosition.LEFT) ? "left" : "right";
+		String to = (target == GenericPositions.LEFT) ? "Left" : "Right";
+		String name = from + "Start" + to + element;
+
+		String description = String.format("%s START %s %s (%s)",
+				                           start, target, element.toUpperCase(), rank);
+		return new Decision(name, description);
+	}
+}
@@ -0,0 +1,162 @@
+package org.usfirst.frc.team4183.robot.subsystems.AutonomousSubsystem;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.usfirst.frc.team4183.utils.Histogram;
+import org.usfirst.frc.team4183.utils.RobotTrajectory;
+
+import edu.wpi.first.wpilibj.Timer;
+
+/**
+ * Replanner runs re-planning work (regenerating or splicing a trajectory) on a
+ * background thread so the Scheduler loop is never blocked
+ *
+ * Only one request is worked at a time. AutonomousSubsystem.periodic() calls
+ * poll(), which never waits: it either finds the work done and publishes the
+ * result, finds the deadline passed and abandons the request, or returns.
+ * A result is published with a single atomic set, so the states that consume
+ * it see either the whole new plan or nothing.
+ *
+ * NOTE: Pathfinder runs in native code and can't be interrupted, so an abandoned
+ * request may keep the planning thread busy until it completes (its result is
+ * discarded). A request submitted after that waits behind it, and its deadline
+ * still counts from its own submit().
+ */
+public class Replanner
+{
+	/** A completed re-plan */
+	public static class Plan
+	{
+		public final String reason;
+		public final RobotTrajectory trajectory;
+		public final double latency_ms;		// From submit() to the result being published
+
+		Plan(String reason, RobotTrajectory trajectory, double latency_ms)
+		{
+			this.reason = reason;
+			this.trajectory = trajectory;
+			this.latency_ms = latency_ms;
+		}
+	}
+
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(r ->
+	{
+		Thread thread = new Thread(r, "Replanner");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.NORM_PRIORITY-1);	// Never ahead of the control loops
+		return thread;
+	});
+
+	private final AtomicReference<Plan> latestPlan = new AtomicReference<>();
+
+	// Only touched from the Scheduler thread (submit and poll)
+	private Future<RobotTrajectory> pending;
+	private String pendingReason;
+	private double submitTime_sec;
+	private double deadline_sec;
+
+	private final Histogram latency_ms = new Histogram("Replan latency (ms)", 0.0, 2000.0, 40);
+	private int completedCount = 0;
+	private int failedCount = 0;
+	private int deadlineMissCount = 0;
+
+	/**
+	 * Start a re-plan if one is not already running
+	 * @param reason for logging (e.g., "alliance conflict")
+	 * @param work produces the new trajectory on the planning thread
+	 * @param timeout_sec the result is discarded if not ready by then
+	 * @return false if a request is already pending
+	 */
+	public boolean submit(String reason, Callable<RobotTrajectory> work, double timeout_sec)
+	{
+		if (isReplanning())
+		{
+			return false;
+		}
+		pendingReason = reason;
+		submitTime_sec = Timer.getFPGATimestamp();
+		deadline_sec = submitTime_sec + timeout_sec;
+		pending = executor.submit(work);
+		System.out.format("Time: %f: Replan requested: %s\n", submitTime_sec, reason);
+		return true;
+	}
+
+	/**
+	 * Check on the pending request without blocking; call every loop
+	 */
+	public void poll()
+	{
+		if (pending == null)
+		{
+			return;
+		}
+
+		double now_sec = Timer.getFPGATimestamp();
+		double elapsed_ms = (now_sec - submitTime_sec) * 1000.0;
+		if (pending.isDone())
+		{
+			latency_ms.record(elapsed_ms);
+			try
+			{
+				latestPlan.set(new Plan(pendingReason, pending.get(), elapsed_ms));
+				++completedCount;
+				System.out.format("Time: %f: Replan complete: %s in %.1f ms\n", now_sec, pendingReason, elapsed_ms);
+			}
+			catch (InterruptedException | ExecutionException e)
+			{
+				++failedCount;
+				System.out.format("Time: %f: Replan failed: %s (%s)\n", now_sec, pendingReason, e.getMessage());
+			}
+			pending = null;
+		}
+		else if (now_sec > deadline_sec)
+		{
+			pending.cancel(true);
+			pending = null;
+			++deadlineMissCount;
+			System.out.format("Time: %f: Replan abandoned: %s after %.1f ms\n", now_sec, pendingReason, elapsed_ms);
+		}
+	}
+
+	/**
+	 * @return true while a request is being worked (the re-plan flag)
+	 */
+	public boolean isReplanning()
+	{
+		return pending != null;
+	}
+
+	/**
+	 * Take the latest plan, if any; each plan is handed out once
+	 * @return the plan or null
+	 */
+	public Plan takePlan()
+	{
+		return latestPlan.getAndSet(null);
+	}
+
+	public Histogram getLatency()
+	{
+		return latency_ms;
+	}
+
+	public int getCompletedCount()
+	{
+		return completedCount;
+	}
+
+	public int getFailedCount()
+	{
+		return failedCount;
+	}
+
+	public int getDeadlineMissCount()
+	{
+		return deadlineMissCount;
+	}
+}
@@ -0,0 +1,71 @@
+package org.usfirst.frc.team4183.robot.subsystems.AutonomousSubsystem;
+
+import org.usfirst.frc.team4183.robot.Robot;
+import org.usfirst.frc.team4183.robot.subsystems.DriveSubsystem.DriveProfile;
+import org.usfirst.frc.team4183.utils.CommandUtils;
+import org.usfirst.frc.team4183.utils.FieldMap;
+import org.usfirst.frc.team4183.utils.Positions.GenericPositions;
+import org.usfirst.frc.team4183.utils.Positions.StartingPosition;
+
+import edu.wpi.first.wpilibj.command.Command;
+
+/**
+ * RouteTest drives a route planned on demand instead of one from PathPlans
+ *
+ * A route from the selected starting position to our side of the near switch
+ * (from the game data) is requested with AutonomousSubsystem.requestRoute();
+ * it is planned and fitted on the Replanner thread while this state waits, and
+ * is driven once takeReplan() hands it over. If no route arrives before the
+ * Replanner abandons the request, the robot does not move.
+ */
+public class RouteTest extends Command
+{
+	private static final String REASON = "route test";
+	private static final double ROUTE_TIMEOUT_SEC = 3.0;
+	
+	private boolean waiting = false;
+	
+	public RouteTest()
+	{
+		// Nothing required; the autonomous Idle state keeps running
+	}
+	
+	@Override
+	protected void initialize()
+	{
+		System.out.println(this.getClass().getSimpleName());
+		Robot.autonomousSubsystem.takeReplan();		// Drop any plan left from before
+		waiting = false;
+		
+		StartingPosition start = PathPlans.getSelectedStartingPosition();
+		GenericPositions side = Robot.autonomousSubsystem.getSwitchPosition();
+		if (start == null || side == GenericPositions.UNKNOWN)
+		{
+			System.out.println("RouteTest: no starting position or game data, not moving");
+			return;
+		}
+		FieldMap.ScoringLocation target = (side == GenericPositions.LEFT) ? FieldMap.ScoringLocation.LEFT_SWITCH 
+				                                                          : FieldMap.ScoringLocation.RIGHT_SWITCH;
+		waiting = Robot.autonomousSubsystem.requestRoute(REASON, "routeTest", FieldMap.startPose(start), target, ROUTE_TIMEOUT_SEC);
+	}
+	
+	@Override
+	protected boolean isFinished()
+	{
+		if (! waiting)
+		{
+			return true;
+		}
+		
+		Replanner.Plan plan = Robot.autonomousSubsystem.takeReplan();
+		if (plan != null && REASON.equals(plan.reason))
+		{
+			Robot.autonomousSubsystem.clearTrajectoryFollower();
+			return CommandUtils.stateChange(this, new DriveProfile(plan.trajectory));
+		}
+		
+		// The plan is published in periodic() before this runs, so once nothing is
+		// being re-planned the request has failed or been abandoned
+		return ! Robot.autonomousSubsystem.isReplanning();
+	}
+}
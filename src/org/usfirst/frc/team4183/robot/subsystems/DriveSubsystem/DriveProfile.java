@@ -3,6 +3,7 @@ package org.usfirst.frc.team4183.robot.subsystems.DriveSubsystem;
 import org.usfirst.frc.team4183.robot.Robot;
 import org.usfirst.frc.team4183.robot.subsystems.DriveSubsystem.DriveProfile;
 import org.usfirst.frc.team4183.utils.CommandUtils;
+import org.usfirst.frc.team4183.utils.PrimitiveTrajectory;
 import org.usfirst.frc.team4183.utils.RobotTrajectory;
 
 import com.ctre.phoenix.motion.SetValueMotionProfile;
@@ -14,17 +15,36 @@ public class DriveProfile extends Command {
 
 	RobotTrajectory trajectory;
 	
+	// Trajectories run directly after the first with no Hold between them
+	RobotTrajectory[] chained;
+	
+	// The center of all of the above, end to end, for the path follower
+	PrimitiveTrajectory followed;
+	
 	double timeout_sec = 0.0;
 	
-    public DriveProfile(RobotTrajectory aTrajectory) 
+	/**
+	 * @param aTrajectory to drive
+	 * @param chainedTrajectories (optional) driven in order after the first without stopping
+	 */
+    public DriveProfile(RobotTrajectory aTrajectory, RobotTrajectory... chainedTrajectories) 
     {
     	requires(Robot.driveSubsystem);
     	
     	trajectory = aTrajectory;
+    	chained = chainedTrajectories;
+    	
+    	PrimitiveTrajectory[] centers = new PrimitiveTrajectory[1 + chained.length];
+    	centers[0] = trajectory.center;
+    	for (int i = 0; i < chained.length; ++i)
+    	{
+    		centers[i + 1] = chained[i].center;
+    	}
+    	followed = (chained.length == 0) ? trajectory.center : PrimitiveTrajectory.concat(centers);
     	
     	// Timeout is set to 2 seconds beyond the estimated trajectory length based on the 
     	// sum of all delta-t values (assumed to be monotonic)
-    	timeout_sec = 0.5 + trajectory.center.length() * trajectory.center.get(0).dt;
+    	timeout_sec = 0.5 + followed.duration_sec();
     }
     
     // Called just before this Command runs the first time
@@ -32,8 +52,15 @@ public class DriveProfile extends Command {
     {
     	System.out.println(this.getClass().getSimpleName());
     	Robot.driveSubsystem.startTrajectory(trajectory);
+    	for (RobotTrajectory next : chained)
+    	{
+    		if (! Robot.driveSubsystem.motionProfileDriver.chainTrajectory(next))
+    		{
+    			System.out.println("Unable to chain trajectory: " + next.name);
+    		}
+    	}
     	Robot.driveSubsystem.motionProfileDriver.control();
-    	Robot.autonomousSubsystem.initTrajectoryFollower(trajectory.left);
+    	Robot.autonomousSubsystem.initTrajectoryFollower(followed);
     	
     }
 
@@ -42,7 +69,7 @@ public class DriveProfile extends Command {
     {
     	Robot.driveSubsystem.motionProfileDriver.control();
     	Robot.driveSubsystem.profileDrive();
-    	Robot.autonomousSubsystem.updatePathFollower();
+    	Robot.autonomousSubsystem.updatePathFollower(Robot.driveSubsystem.motionProfileDriver.getExecutedPoints());
     	SmartDashboard.putNumber("Path Completion Percentage", Robot.autonomousSubsystem.getPercentageComplete());
     }
 
@@ -27,6 +27,7 @@ import jaci.pathfinder.Waypoint;
 import jaci.pathfinder.followers.EncoderFollower;
 import jaci.pathfinder.modifiers.TankModifier;
 import org.usfirst.frc.team4183.utils.JoystickScale;
+import org.usfirst.frc.team4183.utils.PIDFController;
 import org.usfirst.frc.team4183.utils.RobotTrajectory;
 
 
@@ -42,6 +43,14 @@ public class DriveSubsystem extends BitBucketsSubsystem
 	
 	private final double LOW_SENS_GAIN = 0.6;		
 	private final double ALIGN_LOOP_GAIN = 0.04;
+	
+	// Align drive damps the yaw rate from the IMU (heading P is 0, as it has been);
+	// auto straight holds the heading. Gains can be changed while running.
+	private final PIDFController alignController = 
+			new PIDFController(new PIDFController.Gains(0.0, 0.0, ALIGN_LOOP_GAIN, 0.0, 0.0, 0.0, -1.0, 1.0));
+	private final PIDFController straightController = 
+			new PIDFController(new PIDFController.Gains(ALIGN_LOOP_GAIN));
+	private double lastAlignTime_sec = 0.0;
   
 	private final int EDGES_PER_ENCODER_COUNT = 4;	// Always for quadrature
 	
@@ -379,9 +388,28 @@ public class DriveSubsystem extends BitBucketsSubsystem
 	public void setAlignDrive(boolean start) {
 		if(start) {
 			yawSetPoint = Robot.imu.getYawDeg();
+			alignController.reset();
+			straightController.reset();
+			lastAlignTime_sec = Timer.getFPGATimestamp();
 		} 
 	}
 	
+	public PIDFController getAlignController() {
+		return alignController;
+	}
+	
+	public PIDFController getStraightController() {
+		return straightController;
+	}
+	
+	// Time since the last align update (sec), a nominal loop if just started
+	private double alignDt_sec() {
+		double now = Timer.getFPGATimestamp();
+		double dt = now - lastAlignTime_sec;
+		lastAlignTime_sec = now;
+		return (dt > 0.0 && dt < 0.1) ? dt : RobotMap.MOTION_PROFILE_PERIOD_MS / 1000.0;
+	}
+	
 	public void doAlignDrive(double fwdStick, double turnStick) {
 					
 		if(Robot.oi.btnLowSensitiveDrive.get())
@@ -404,8 +432,8 @@ public class DriveSubsystem extends BitBucketsSubsystem
 			// so + stick should lower the setpoint. 
 			yawSetPoint += -0.3 * turnStick;
 			
-			double error = -ALIGN_LOOP_GAIN * (yawSetPoint - Robot.imu.getYawDeg());
-			error = -ALIGN_LOOP_GAIN * -Robot.imu.getYawRateDps();
+			// + controller output is +yaw, which is - on the arcade turn
+			double error = -alignController.update(yawSetPoint, Robot.imu.getYawDeg(), Robot.imu.getYawRateDps(), alignDt_sec());
 			SmartDashboard.putNumber("IMU_ERROR", error);
 			arcadeDrive( fwdStick, error + yawCorrect());
 		}
@@ -416,7 +444,7 @@ public class DriveSubsystem extends BitBucketsSubsystem
 		if( fwd == 0.0)
 			setAllMotorsZero();
 		else {
-			double error = ALIGN_LOOP_GAIN * (yawSetPoint - Robot.imu.getYawDeg());				
+			double error = straightController.update(yawSetPoint, Robot.imu.getYawDeg(), alignDt_sec());
 			arcadeDrive( fwd, error + yawCorrect());				
 		}			
 	}
@@ -697,6 +725,25 @@ public class DriveSubsystem extends BitBucketsSubsystem
 			SmartDashboard.putNumber( "LeftEncoderUnits", 
 					getLeftEncoderUnits());	
 			
+			SmartDashboard.putNumber( "MP_PointsStreamed", 
+					motionProfileDriver.getPointsStreamed());
+			SmartDashboard.putNumber( "MP_PointsRemaining", 
+					motionProfileDriver.getPointsRemaining());
+			SmartDashboard.putNumber( "MP_MaxPointsPerFeed", 
+					motionProfileDriver.getMaxPointsPerFeed());
+			SmartDashboard.putNumber( "MP_TopBufferFull", 
+					motionProfileDriver.getTopBufferFullCount());
+			SmartDashboard.putNumber( "MP_Underruns", 
+					motionProfileDriver.getUnderrunCount());
+			SmartDashboard.putNumber( "MP_PumpJitterP99", 
+					motionProfileDriver.getPump().getJitter().getPercentile(0.99));
+			SmartDashboard.putNumber( "MP_PumpJitterMax", 
+					motionProfileDriver.getPump().getJitter().getMax());
+			SmartDashboard.putNumber( "MP_PumpMissed", 
+					motionProfileDriver.getPump().getMissedDeadlines());
+			SmartDashboard.putNumber( "MP_SkewWorst", 
+					motionProfileDriver.getExecutor().getWorstSkew_ms());
+			
 		}
 		
 	}
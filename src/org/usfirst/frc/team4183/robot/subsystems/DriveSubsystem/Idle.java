@@ -88,7 +88,7 @@ public class Idle extends Command
 //	    			turnAngle_deg *= -1;
 //	    			return CommandUtils.stateChange(this, new TurnBy(turnAngle_deg, 5.0));			// Magic timeout value
 //	    		case PROFILE_TEST:
-//	    			RobotTrajectory trajectory = PathPlans.getSelectedTrajectory();
+//	    			RobotTrajectory trajectory = Robot.autonomousSubsystem.getPreparedTrajectory();
 //	    			if (trajectory != null)
 //	    			{
 //	    				if (trajectory.runCount > 0) 	// Only run trajectories up to the limit defined
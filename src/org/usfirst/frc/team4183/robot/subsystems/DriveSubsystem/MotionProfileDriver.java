@@ -1,19 +1,17 @@
 package org.usfirst.frc.team4183.robot.subsystems.DriveSubsystem;
 
+import java.util.ArrayDeque;
+
 import org.usfirst.frc.team4183.robot.RobotMap;
 import org.usfirst.frc.team4183.utils.RobotTrajectory;
+import org.usfirst.frc.team4183.utils.TalonProfilePoints;
 
 import com.ctre.phoenix.motion.MotionProfileStatus;
 import com.ctre.phoenix.motion.SetValueMotionProfile;
 import com.ctre.phoenix.motion.TrajectoryPoint;
-import com.ctre.phoenix.motion.TrajectoryPoint.TrajectoryDuration;
 import com.ctre.phoenix.motorcontrol.ControlMode;
 import com.ctre.phoenix.motorcontrol.can.TalonSRX;
 
-import edu.wpi.first.wpilibj.DriverStation;
-import edu.wpi.first.wpilibj.Notifier;
-import jaci.pathfinder.Trajectory;
-
 /*
  * MotionProfileDriver is a 2-controller solution to a left/right tank-style driver
  * 
@@ -22,6 +20,20 @@ import jaci.pathfinder.Trajectory;
  * 
  * This classis based on the CTRE-Phoenix MotionProfileExample
  * 
+ * Rather than pushing every point up front, the points are streamed: a cursor
+ * into the trajectory's point buffers is advanced each control() loop, topping
+ * up the Talon top buffer by however much room it reports (topBufferRem).
+ * This lets long or finely sampled trajectories run without overflowing the
+ * buffers, and the fill counters show how close we run to an underrun.
+ * 
+ * Trajectories can be chained (see chainTrajectory): when the cursor reaches the
+ * end of one trajectory it continues into the next, offsetting its positions by
+ * where the previous one ended. The Talons see a single profile, so there is no
+ * Hold and re-fill between the paths; only the final point is marked last.
+ * The speeds are streamed as they are, so for the robot to keep moving across
+ * a seam the trajectories must be timed together (TrajectoryRetimer.retimeChain);
+ * separately generated paths each slow to a stop at their end.
+ *
  */
 
 public class MotionProfileDriver 
@@ -38,6 +50,10 @@ public class MotionProfileDriver
 	private MotionProfileStatus _statusL = new MotionProfileStatus();
 	private MotionProfileStatus _statusR = new MotionProfileStatus();
 	
+	/** Reused for every point streamed to the Talons */
+	private final TrajectoryPoint _pointL = new TrajectoryPoint();
+	private final TrajectoryPoint _pointR = new TrajectoryPoint();
+	
 	/** additional cache for holding the active trajectory point */
 	double _posL=0,_velL=0,_headingL=0;
 	double _posR=0, _velR=0, _headingR=0;
@@ -87,6 +103,31 @@ public class MotionProfileDriver
 	 */
 	private static final int kNumLoopsTimeout = 10;
 	
+	/**
+	 * Most points pushed in a single feed; bounds the time spent in any one
+	 * control() loop while still staying well ahead of the executer
+	 * (at 50 ms per point the Talon consumes less than one point per loop).
+	 */
+	private static final int kMaxPointsPerFeed = 32;
+	
+	/** The points being streamed and the index of the next one to push */
+	private TalonProfilePoints _feedL;
+	private TalonProfilePoints _feedR;
+	private int _feedCursor = 0;
+	
+	/** Trajectories to run after the current one, and the offsets they start from (native ticks) */
+	private final ArrayDeque<RobotTrajectory> _chain = new ArrayDeque<>();
+	private double _offsetL = 0.0;
+	private double _offsetR = 0.0;
+	private boolean _firstSegment = true;
+	
+	/** Fill-rate counters, cleared each time a profile starts */
+	private int _feedCalls = 0;			// Number of times the feeder ran
+	private int _pointsStreamed = 0;		// Points pushed (per side)
+	private int _maxPointsPerFeed = 0;	// Largest single top-up
+	private int _topBufferFullCount = 0;	// Feeds that found no room while points remained
+	private int _underrunCount = 0;		// Underruns seen while streaming
+	
 	/**
 	 * Lets create a periodic task to funnel our trajectory points into our talon.
 	 * It doesn't need to be very accurate, just needs to keep pace with the motion
@@ -95,22 +136,11 @@ public class MotionProfileDriver
 	 * Generally speaking you want to call it at least twice as fast as the duration
 	 * of your trajectory points.  So if they are firing every 20ms, you should call 
 	 * every 10ms.
+	 * The pump runs it on a fixed-rate thread and keeps jitter statistics; the
+	 * executor advances both sides as one unit and measures the left/right skew.
 	 */
-	class PeriodicRunnable implements java.lang.Runnable 
-	{
-	    public void run() 
-	    {  
-	    	// NOTE: Technically there can be temporal shear between
-	    	// these two lines such that the advancing of the profile
-	    	// could be non-deterministic between left and right.
-	    	// Only solution is to use true real-time environments
-	    	// since if this happens repeatedly there will be a slight
-	    	// drive to one side if all turns are in the same direction.
-	    	_talonL.processMotionProfileBuffer();  
-	    	_talonR.processMotionProfileBuffer();  
-	    }
-	}
-	Notifier _notifer = new Notifier(new PeriodicRunnable());
+	private final PairedProfileExecutor _executor;
+	private final MotionProfilePump _pump;
 	
 
 	/**
@@ -120,23 +150,38 @@ public class MotionProfileDriver
 	 *            reference to Talon object to fetch motion profile status from.
 	 *        profileFramePeriod_ms
 	 *            The monotonic period of ALL profiles to be used, we don't
-	 *            need to be infintely flexible at this time; just be sure the
-	 *            number of points in a trajectory is small-ish to avoid overflowing
-	 *            the 128 point buffer in time (e.q., trajectories with 180 points should work)
+	 *            need to be infintely flexible at this time; points are streamed
+	 *            as the buffers drain so the trajectory length is not limited
+	 *            by the Talon buffer size
+	 *            The buffer pump runs at twice this rate
 	 */
 	public MotionProfileDriver(TalonSRX _talonL, TalonSRX _talonR, double profilePeriod_ms) 
+	{
+		this(_talonL, _talonR, profilePeriod_ms, profilePeriod_ms / 2.0);
+	}
+	
+	/**
+	 * C'tor
+	 * 
+	 * @param pumpPeriod_ms
+	 *            Period of the processMotionProfileBuffer pump; should be no more
+	 *            than half of profilePeriod_ms
+	 */
+	public MotionProfileDriver(TalonSRX _talonL, TalonSRX _talonR, double profilePeriod_ms, double pumpPeriod_ms) 
 	{
 		_currentTrajectory = new RobotTrajectory();
 		
 		this._talonL = _talonL;
 		this._talonR = _talonR;
 		
-		 /* since our MP is ??ms per point, set the control frame rate and the
-		 * Notifier to half that
+		 /* since our MP is ??ms per point, set the control frame rate to half that
+		 * and pump the buffers at the requested rate
 		 */
 		_talonL.changeMotionControlFramePeriod((int)(profilePeriod_ms/2.0));
 		_talonR.changeMotionControlFramePeriod((int)(profilePeriod_ms/2.0));
-		_notifer.startPeriodic((int)(profilePeriod_ms / 2000.0));
+		_executor = new PairedProfileExecutor(_talonL, _talonR);
+		_pump = new MotionProfilePump("MotionProfilePump", _executor, pumpPeriod_ms);
+		_pump.start();
 	}
 
 	/**
@@ -163,7 +208,12 @@ public class MotionProfileDriver
 		 * button press
 		 */
 		_bStart = false;
-
+		
+		/* Nothing left to stream */
+		_feedL = null;
+		_feedR = null;
+		_feedCursor = 0;
+		_chain.clear();
 	}
 	
 	public boolean minPointsLoaded()
@@ -239,6 +289,8 @@ public class MotionProfileDriver
 						 * wait for MP to stream to Talon, really just the first few
 						 * points
 						 */
+					feedTopBuffer();
+
 					/* do we have a minimum numberof points in Talon */
 					if (_statusL.btmBufferCnt > kMinPointsInTalon && _statusR.btmBufferCnt > kMinPointsInTalon) {
 						/* start (once) the motion profile */
@@ -249,6 +301,11 @@ public class MotionProfileDriver
 					}
 					break;
 				case 2: /* check the status of the MP */
+					feedTopBuffer();
+					if (_statusL.isUnderrun || _statusR.isUnderrun) {
+						++_underrunCount;
+					}
+
 					/*
 					 * if talon is reporting things are good, keep adding to our
 					 * timeout. Really this is so that you can unplug your talon in
@@ -292,40 +349,23 @@ public class MotionProfileDriver
 			MotionProfileInstrumentation.process(_statusR, _posR, _velR, _headingR);
 		}
 	}
-	/**
-	 * Find enum value if supported.
-	 * @param durationMs
-	 * @return enum equivalent of durationMs
-	 */
-	private TrajectoryDuration GetTrajectoryDuration(int durationMs)
-	{	 
-		/* create return value */
-		TrajectoryDuration retval = TrajectoryDuration.Trajectory_Duration_0ms;
-		/* convert duration to supported type */
-		retval = retval.valueOf(durationMs);
-		/* check that it is valid */
-		if (retval.value != durationMs) {
-			DriverStation.reportError("Trajectory Duration not supported - use configMotionProfileTrajectoryPeriod instead", false);		
-		}
-		/* pass to caller */
-		return retval;
-	}
-		
 	/** Start filling the MPs to all of the involved Talons. */
 	private boolean startFilling() 
 	{
-		boolean fillOk = (_currentTrajectory != null); 
+		boolean fillOk = (_currentTrajectory != null && _currentTrajectory.left != null && _currentTrajectory.right != null); 
 		if (fillOk)
 		{
-			startFilling(_currentTrajectory.left, _currentTrajectory.right);
+			if (_currentTrajectory.leftPoints == null || _currentTrajectory.rightPoints == null)
+			{
+				// Trajectories from the PathPlans are always converted at load;
+				// anything built elsewhere is converted (once) here
+				_currentTrajectory.buildTalonPoints();
+			}
+			startFilling(_currentTrajectory.leftPoints, _currentTrajectory.rightPoints);
 		}
 		return fillOk;
 	}
-	private void startFilling(Trajectory profileL, Trajectory profileR) {
-
-		/* create an empty point */
-		TrajectoryPoint pointL = new TrajectoryPoint();
-		TrajectoryPoint pointR = new TrajectoryPoint();
+	private void startFilling(TalonProfilePoints profileL, TalonProfilePoints profileR) {
 
 		/* did we get an underrun condition since last time we checked ? */
 		if (_statusL.hasUnderrun||_statusR.hasUnderrun) {
@@ -349,65 +389,207 @@ public class MotionProfileDriver
 		_talonL.configMotionProfileTrajectoryPeriod(BASE_CONTROL_PERIOD_MS, RobotMap.CONTROLLER_TIMEOUT_MS);
 		_talonR.configMotionProfileTrajectoryPeriod(BASE_CONTROL_PERIOD_MS, RobotMap.CONTROLLER_TIMEOUT_MS);
 		
-		/* This is fast since it's just into our TOP buffer */
-		for (int i = 0; i < profileL.length(); ++i) 
+		/* Stream from the start of the new points; the first feed primes the buffer */
+		_feedL = profileL;
+		_feedR = profileR;
+		_feedCursor = 0;
+		_offsetL = 0.0;
+		_offsetR = 0.0;
+		_firstSegment = true;
+		
+		_feedCalls = 0;
+		_pointsStreamed = 0;
+		_maxPointsPerFeed = 0;
+		_topBufferFullCount = 0;
+		_underrunCount = 0;
+		_executor.resetStatistics();
+		
+		_talonL.getMotionProfileStatus(_statusL);
+		_talonR.getMotionProfileStatus(_statusR);
+		feedTopBuffer();
+	}
+	
+	/**
+	 * Top up the Talon top buffers from the cursor
+	 * Pushes as many points as both sides have room for (per the last status read),
+	 * up to kMaxPointsPerFeed; the points were converted to native units when the
+	 * trajectory was loaded. When the current trajectory runs out the next one in
+	 * the chain (if any) is continued from where it ended.
+	 */
+	private void feedTopBuffer()
+	{
+		if (_feedL == null || (_feedCursor >= _feedL.length() && ! nextSegment()))
 		{
-			Trajectory.Segment seg = profileL.get(i);
-
-			/* for each point, fill our structure and pass it to API */
+			return;
+		}
+		++_feedCalls;
+		
+		int room = Math.min(_statusL.topBufferRem, _statusR.topBufferRem);
+		int count = Math.min(room, kMaxPointsPerFeed);
+		if (count <= 0)
+		{
+			++_topBufferFullCount;
+			return;
+		}
+		
+		int pushed = 0;
+		while (pushed < count && (_feedCursor < _feedL.length() || nextSegment())) 
+		{
+			int i = _feedCursor;
+			boolean first = _firstSegment && (i == 0);
+			boolean last = ((i + 1) == _feedL.length()) && _chain.isEmpty();
 			
-			// Motion Profile wants native units for positions and units/100ms for velocity
-			// We do this in two steps for clarity
-			// First, position converted from meters to rotations, and velocity from m/s to RPM
-			pointL.position = RobotMap.meter2inch(seg.position)/ RobotMap.WHEEL_CIRCUMFERENCE_INCHES;	// inches to rotations
-       	 	pointL.velocity = RobotMap.meter2inch(seg.velocity) / RobotMap.WHEEL_CIRCUMFERENCE_INCHES * 60.0;
-       	 	
-       	 	// Second, convert from rotations and RPM to units and units/100ms
-			pointL.position = pointL.position * RobotMap.DRIVE_MOTOR_NATIVE_TICKS_PER_REV;         //Convert Revolutions to Units
-			pointL.velocity = pointL.velocity * RobotMap.DRIVE_MOTOR_NATIVE_TICKS_PER_REV / 600.0; //Convert RPM to Units/100ms
-
-			pointL.headingDeg = 0; /* future feature - not used in this example*/
-			pointL.profileSlotSelect0 = 0; /* which set of gains would you like to use [0,3]? */
-			pointL.profileSlotSelect1 = 0; /* future feature  - not used in this example - cascaded PID [0,1], leave zero */
-			pointL.timeDur = GetTrajectoryDuration((int)(seg.dt*1000));
-			pointL.zeroPos = false;
-			if (i == 0)
-				pointL.zeroPos = true; /* set this to true on the first point */
-
-			pointL.isLastPoint = false;
-			if ((i + 1) == profileL.length())
-				pointL.isLastPoint = true; /* set this to true on the last point  */
+			/* for each point, fill our structure and pass it to API */
+			_pointL.position = _offsetL + _feedL.position(i);
+			_pointL.velocity = _feedL.velocity(i);
+			_pointL.headingDeg = 0; /* future feature - not used in this example*/
+			_pointL.profileSlotSelect0 = 0; /* which set of gains would you like to use [0,3]? */
+			_pointL.profileSlotSelect1 = 0; /* future feature  - not used in this example - cascaded PID [0,1], leave zero */
+			_pointL.timeDur = _feedL.timeDur(i);
+			_pointL.zeroPos = first;	/* set this to true on the first point */
+			_pointL.isLastPoint = last; /* set this to true on the last point  */
 
 			// Right Side
-			seg = profileR.get(i);
-
-			/* for each point, fill our structure and pass it to API */
-			// Motion Profile wants native units for positions and units/100ms for velocity
-			// We do this in two steps for clarity
-			// First, position converted from meters to rotations, and velocity from m/s to RPM
-			pointR.position = RobotMap.meter2inch(seg.position)/ RobotMap.WHEEL_CIRCUMFERENCE_INCHES;	// inches to rotations
-       	 	pointR.velocity = RobotMap.meter2inch(seg.velocity) / RobotMap.WHEEL_CIRCUMFERENCE_INCHES * 60.0;
-       	 	
-       	 	// Second, convert from rotations and RPM to units and units/100ms
-			pointR.position = pointR.position * RobotMap.DRIVE_MOTOR_NATIVE_TICKS_PER_REV;         //Convert Revolutions to Units
-			pointR.velocity = pointR.velocity * RobotMap.DRIVE_MOTOR_NATIVE_TICKS_PER_REV / 600.0; //Convert RPM to Units/100ms
+			_pointR.position = _offsetR + _feedR.position(i);
+			_pointR.velocity = _feedR.velocity(i);
+			_pointR.headingDeg = 0; /* future feature - not used in this example*/
+			_pointR.profileSlotSelect0 = 0; /* which set of gains would you like to use [0,3]? */
+			_pointR.profileSlotSelect1 = 0; /* future feature  - not used in this example - cascaded PID [0,1], leave zero */
+			_pointR.timeDur = _feedR.timeDur(i);
+			_pointR.zeroPos = first;	/* set this to true on the first point */
+			_pointR.isLastPoint = last; /* set this to true on the last point  */
 
+			_talonL.pushMotionProfileTrajectory(_pointL);
+			_talonR.pushMotionProfileTrajectory(_pointR);
+			
+			++_feedCursor;
+			++pushed;
+		}
 		
-			pointR.headingDeg = 0; /* future feature - not used in this example*/
-			pointR.profileSlotSelect0 = 0; /* which set of gains would you like to use [0,3]? */
-			pointR.profileSlotSelect1 = 0; /* future feature  - not used in this example - cascaded PID [0,1], leave zero */
-			pointR.timeDur = GetTrajectoryDuration((int)(seg.dt*1000));
-			pointR.zeroPos = false;
-			if (i == 0)
-				pointR.zeroPos = true; /* set this to true on the first point */
-
-			pointR.isLastPoint = false;
-			if ((i + 1) == profileR.length())
-				pointR.isLastPoint = true; /* set this to true on the last point  */
-
-			_talonL.pushMotionProfileTrajectory(pointL);
-			_talonR.pushMotionProfileTrajectory(pointR);
+		_pointsStreamed += pushed;
+		_maxPointsPerFeed = Math.max(_maxPointsPerFeed, pushed);
+	}
+	
+	/**
+	 * Continue the cursor into the next chained trajectory
+	 * Positions in the next trajectory are relative to its own start, so they are
+	 * offset by where the current one ended on each side.
+	 * @return false if there is nothing chained
+	 */
+	private boolean nextSegment()
+	{
+		RobotTrajectory next = _chain.poll();
+		if (next == null)
+		{
+			return false;
+		}
+		if (_feedL.length() > 0)
+		{
+			_offsetL += _feedL.position(_feedL.length() - 1);
+			_offsetR += _feedR.position(_feedR.length() - 1);
+		}
+		if (next.leftPoints == null || next.rightPoints == null)
+		{
+			next.buildTalonPoints();
+		}
+		_feedL = next.leftPoints;
+		_feedR = next.rightPoints;
+		_feedCursor = 0;
+		_firstSegment = false;
+		System.out.println("Chaining Trajectory: " + next.name);
+		return true;
+	}
+	
+	/**
+	 * Queue a trajectory to run directly after the current one (and anything
+	 * already chained), with no Hold between them
+	 * Must be called before the final point of the current profile has been
+	 * streamed, since that point tells the Talon the profile is over.
+	 * @return false if the trajectory can't be chained (too late, or it has no left/right)
+	 */
+	public boolean chainTrajectory(RobotTrajectory next)
+	{
+		if (next == null || next.left == null || next.right == null)
+		{
+			return false;
+		}
+		boolean lastPointStreamed = (_feedL != null && _feedCursor >= _feedL.length() && _chain.isEmpty());
+		if (lastPointStreamed)
+		{
+			return false;
+		}
+		_chain.add(next);
+		return true;
+	}
+	
+	/**
+	 * Points the Talons have taken from their buffers since the profile started
+	 * This is what we pushed less what is still waiting in the top and bottom
+	 * buffers (per the last status read); the slower side is reported.
+	 * @return number of points executed (0 when no profile is running)
+	 */
+	public int getExecutedPoints()
+	{
+		if (_feedL == null)
+		{
+			return 0;
+		}
+		int executedL = _pointsStreamed - (_statusL.topBufferCnt + _statusL.btmBufferCnt);
+		int executedR = _pointsStreamed - (_statusR.topBufferCnt + _statusR.btmBufferCnt);
+		return Math.max(0, Math.min(executedL, executedR));
+	}
+	
+	/** @return number of feeder runs since the profile started */
+	public int getFeedCalls()
+	{
+		return _feedCalls;
+	}
+	
+	/** @return points pushed to each Talon since the profile started */
+	public int getPointsStreamed()
+	{
+		return _pointsStreamed;
+	}
+	
+	/** @return points not yet pushed to the Talons, including chained trajectories */
+	public int getPointsRemaining()
+	{
+		int remaining = (_feedL == null) ? 0 : _feedL.length() - _feedCursor;
+		for (RobotTrajectory next : _chain)
+		{
+			remaining += next.left.length();
 		}
+		return remaining;
+	}
+	
+	/** @return the largest number of points pushed by a single feed */
+	public int getMaxPointsPerFeed()
+	{
+		return _maxPointsPerFeed;
+	}
+	
+	/** @return number of feeds that found the top buffer full */
+	public int getTopBufferFullCount()
+	{
+		return _topBufferFullCount;
+	}
+	
+	/** @return the buffer pump, for its jitter statistics */
+	public MotionProfilePump getPump()
+	{
+		return _pump;
+	}
+	
+	/** @return the paired executor, for its left/right skew statistics */
+	public PairedProfileExecutor getExecutor()
+	{
+		return _executor;
+	}
+	
+	/** @return number of control loops that saw the executer underrun */
+	public int getUnderrunCount()
+	{
+		return _underrunCount;
 	}
 	
 	/**
@@ -0,0 +1,132 @@
+package org.usfirst.frc.team4183.robot.subsystems.DriveSubsystem;
+
+import java.util.concurrent.locks.LockSupport;
+
+import org.usfirst.frc.team4183.utils.Histogram;
+
+/**
+ * MotionProfilePump calls a task (the processMotionProfileBuffer calls that move
+ * points from the Talon top buffer to the bottom buffer) at a fixed rate on its
+ * own thread.
+ *
+ * Each deadline is computed from the start time (start + n * period) rather than
+ * from when the last call happened to finish, so lateness in one cycle does not
+ * push out every cycle after it. If we fall more than a whole period behind
+ * (e.g., a GC pause) the missed calls are dropped rather than run back to back,
+ * and counted.
+ *
+ * The actual time between calls minus the period is recorded in a histogram so
+ * the margin against an executer underrun can be measured.
+ */
+public class MotionProfilePump
+{
+	private final Runnable task;
+	private final long period_ns;
+	private final PumpThread pumpThread;
+
+	// Jitter of +/- one period in 0.25 ms bins; anything beyond lands in the end bins
+	private final Histogram jitter_ms;
+
+	private volatile long missedDeadlines = 0;
+
+	/**
+	 * @param name of the thread
+	 * @param task called every period on the pump thread
+	 * @param period_ms time between calls
+	 */
+	public MotionProfilePump(String name, Runnable task, double period_ms)
+	{
+		if (period_ms <= 0.0)
+		{
+			throw new IllegalArgumentException("Motion profile pump period must be positive: " + period_ms);
+		}
+		this.task = task;
+		this.period_ns = (long)(period_ms * 1.0e6);
+		this.jitter_ms = new Histogram(name + " jitter (ms)", -period_ms, period_ms, (int)Math.ceil(8 * period_ms));
+
+		pumpThread = new PumpThread(name);
+		pumpThread.setDaemon(true);
+		pumpThread.setPriority(Thread.NORM_PRIORITY+2);
+	}
+
+	public void start()
+	{
+		pumpThread.start();
+	}
+
+	/**
+	 * Stop the pump
+	 * Does not return until the pump thread has exited.
+	 */
+	public void stop()
+	{
+		pumpThread.interrupt();
+		try {
+			pumpThread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	public double getPeriod_ms()
+	{
+		return period_ns / 1.0e6;
+	}
+
+	/** @return actual interval between calls minus the period, in ms */
+	public Histogram getJitter()
+	{
+		return jitter_ms;
+	}
+
+	/** @return number of calls skipped because the pump fell a period or more behind */
+	public long getMissedDeadlines()
+	{
+		return missedDeadlines;
+	}
+
+	private class PumpThread extends Thread
+	{
+		PumpThread(String name)
+		{
+			super(name);
+		}
+
+		@Override
+		public void run()
+		{
+			long deadline = System.nanoTime();
+			long lastCall = 0;
+
+			while (! isInterrupted())
+			{
+				long now = System.nanoTime();
+				if (lastCall != 0)
+				{
+					jitter_ms.record((now - lastCall - period_ns) / 1.0e6);
+				}
+				lastCall = now;
+
+				task.run();
+
+				// Next deadline is always on the original grid
+				deadline += period_ns;
+				now = System.nanoTime();
+				if (now - deadline >= period_ns)
+				{
+					long behind = (now - deadline) / period_ns;
+					missedDeadlines += behind;
+					deadline += behind * period_ns;
+				}
+
+				// parkNanos can return early (spuriously or on interrupt), so keep
+				// parking until the deadline has actually passed
+				long remaining;
+				while ((remaining = deadline - System.nanoTime()) > 0 && ! isInterrupted())
+				{
+					LockSupport.parkNanos(this, remaining);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package org.usfirst.frc.team4183.robot.subsystems.DriveSubsystem;
+
+import org.usfirst.frc.team4183.utils.Histogram;
+
+import com.ctre.phoenix.motorcontrol.can.TalonSRX;
+
+/**
+ * PairedProfileExecutor advances the left and right motion profile buffers as
+ * a single unit
+ *
+ * There is always some temporal shear between the two processMotionProfileBuffer
+ * calls (one CAN transaction must follow the other). We can't remove it without
+ * a real-time environment, but we can keep it small and unbiased:
+ * 		both calls are made back to back with nothing in between
+ * 		the call order alternates every cycle, so neither side is always first
+ * 		  (always calling left first would drive slightly to one side if all
+ * 		  turns are in the same direction)
+ * 		the skew between the two calls is measured every cycle
+ *
+ * The Talon SRX firmware has no synchronized start for two motion profiles, so
+ * both sides are still started by setting Enable on each in the same loop.
+ */
+public class PairedProfileExecutor implements Runnable
+{
+	private final TalonSRX talonL;
+	private final TalonSRX talonR;
+
+	private boolean leftFirst = true;
+
+	// 0 to 5 ms in 0.1 ms bins
+	private final Histogram skew_ms = new Histogram("Profile L/R skew (ms)", 0.0, 5.0, 50);
+	private volatile double worstSkew_ms = 0.0;
+	private volatile double lastSkew_ms = 0.0;
+
+	public PairedProfileExecutor(TalonSRX talonL, TalonSRX talonR)
+	{
+		this.talonL = talonL;
+		this.talonR = talonR;
+	}
+
+	@Override
+	public void run()
+	{
+		TalonSRX first = leftFirst ? talonL : talonR;
+		TalonSRX second = leftFirst ? talonR : talonL;
+		leftFirst = ! leftFirst;
+
+		long firstNanos = System.nanoTime();
+		first.processMotionProfileBuffer();
+		long secondNanos = System.nanoTime();
+		second.processMotionProfileBuffer();
+
+		double skew = (secondNanos - firstNanos) / 1.0e6;
+		skew_ms.record(skew);
+		lastSkew_ms = skew;
+		if (skew > worstSkew_ms)
+		{
+			worstSkew_ms = skew;
+		}
+	}
+
+	/** @return time between the starts of the two calls on the last cycle (ms) */
+	public double getLastSkew_ms()
+	{
+		return lastSkew_ms;
+	}
+
+	/** @return largest skew seen since the last resetStatistics() (ms) */
+	public double getWorstSkew_ms()
+	{
+		return worstSkew_ms;
+	}
+
+	public Histogram getSkew()
+	{
+		return skew_ms;
+	}
+
+	public void resetStatistics()
+	{
+		skew_ms.clear();
+		worstSkew_ms = 0.0;
+	}
+}
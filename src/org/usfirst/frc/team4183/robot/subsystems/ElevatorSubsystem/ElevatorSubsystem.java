@@ -72,6 +72,24 @@ public class ElevatorSubsystem extends BitBucketsSubsystem {
 		}
 	}
 	
+	/**
+	 * Predicted Motion Magic move time from the configured cruise velocity and
+	 * acceleration (a trapezoid, or a triangle for short moves)
+	 * @return seconds to move between two positions (native ticks)
+	 */
+	public static double getTravelTime_sec(double fromTicks, double toTicks)
+	{
+		// Talon units are per 100 ms
+		double cruise = 10.0 * RobotMap.ELEVATOR_MOTOR_MOTION_CRUISE_SPEED_NATIVE_TICKS;		// ticks/sec
+		double acceleration = 10.0 * RobotMap.ELEVATOR_MOTOR_MOTION_ACCELERATION_NATIVE_TICKS;	// ticks/sec^2
+		double distance = Math.abs(toTicks - fromTicks);
+		if (distance < cruise * cruise / acceleration)
+		{
+			return 2.0 * Math.sqrt(distance / acceleration);
+		}
+		return distance / cruise + cruise / acceleration;
+	}
+	
 	private static double testModePeriod_sec = 2.0;
 	
 	public static int holdUnits = 0;
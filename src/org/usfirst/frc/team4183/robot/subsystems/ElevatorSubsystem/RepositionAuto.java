@@ -8,45 +8,93 @@ import org.usfirst.frc.team4183.utils.CommandUtils;
 import edu.wpi.first.wpilibj.command.Command;
 import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
 
+/**
+ * RepositionAuto moves the elevator to a position while a path is driven in autonomous
+ *
+ * The move is started either
+ * 		at a fraction of path completion, or
+ * 		when the time left on the path is the time the move will take, so the
+ * 		elevator arrives as the drive does (ElevatorPresets constructor)
+ */
 public class RepositionAuto extends Command{
 	// Seconds to wait for pneumatics to open
 	private final double TIME_FOR_PNEUMATICS = 0.5;
-	
+
+	// The move is started on a Scheduler loop, so allow one loop of lateness
+	private final double SCHEDULER_PERIOD_SEC = 0.02;
+
 	private int requestedPosition = -1; // Use -1 as indicator for joystice
-	
-	double pathCompPercent;
-	
+
+	double pathCompPercent;		// < 0 when triggered by time to arrival
+
+	private boolean triggered = false;
+
 	public RepositionAuto(int targetPosition, double apathCompPercent)
 	{
 		requires(Robot.elevatorSubsystem);
 		requestedPosition = targetPosition;
 		pathCompPercent = apathCompPercent;
 	}
-	
-	public void init()
+
+	/**
+	 * Move to a preset so that the move completes as the current path ends
+	 */
+	public RepositionAuto(ElevatorPresets preset)
+	{
+		this(preset.getNativeTicks(), -1.0);
+	}
+
+	@Override
+	protected void initialize()
 	{
 		System.out.println(this.getClass().getSimpleName());
 		Robot.elevatorSubsystem.releasePos();
-		
+		triggered = false;
 	}
-	
-	public void execute()
+
+	@Override
+	protected void execute()
 	{
-		if (Robot.autonomousSubsystem.percentageComplete(pathCompPercent))
+		if (! triggered)
 		{
-		Robot.elevatorSubsystem.holdPosition(requestedPosition);
+			triggered = shouldStart();
+			if (triggered)
+			{
+				System.out.format("%s: moving to %d with %.2f sec left on the path\n",
+						          getClass().getSimpleName(),
+						          requestedPosition,
+						          Robot.autonomousSubsystem.getPathRemainingTime_sec());
+			}
 		}
+		if (triggered)
+		{
+			Robot.elevatorSubsystem.holdPosition(requestedPosition);
 		}
+	}
+
+	private boolean shouldStart()
+	{
+		if (pathCompPercent >= 0.0)
+		{
+			return Robot.autonomousSubsystem.percentageComplete(pathCompPercent);
+		}
+
+		// Lead the end of the path by the predicted move time (from where the elevator
+		// is now) plus whatever is left of the brake release
+		double lead_sec = ElevatorSubsystem.getTravelTime_sec(Robot.elevatorSubsystem.getElevatorNativeUnits(), requestedPosition) +
+				          Math.max(0.0, TIME_FOR_PNEUMATICS - timeSinceInitialized()) +
+				          SCHEDULER_PERIOD_SEC;
+		SmartDashboard.putNumber("ElevatorArrivalLead", lead_sec);
+		return Robot.autonomousSubsystem.isArrivingWithin(lead_sec);
+	}
 
 	@Override
 	protected boolean isFinished() {
-		
+
 		//Basically checks to see if the there is not any joystick movement or any buttons pressed for the elevPositions
 		// Or just got past the top limit
-		 
-		double currPos = Robot.elevatorSubsystem.getElevatorNativeUnits();
-		
-		if (Robot.elevatorSubsystem.isMoveComplete(requestedPosition))	
+
+		if (Robot.elevatorSubsystem.isMoveComplete(requestedPosition))
 		{
 			return CommandUtils.stateChange(this, new Idle());
 		}
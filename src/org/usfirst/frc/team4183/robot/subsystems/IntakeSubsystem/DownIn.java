@@ -12,11 +12,18 @@ import edu.wpi.first.wpilibj.command.Command;
  */
 public class DownIn extends Command {
  
+  private double timeout_sec = 0;
+  
     public DownIn() {
         // Use requires() here to declare subsystem dependencies
         // eg. requires(chassis);
       requires(Robot.intakeSubsystem);  
     }
+    
+    public DownIn(double aTimeOut) {
+      requires(Robot.intakeSubsystem);  
+      timeout_sec = aTimeOut;
+    }
  
     // Called just before this Command runs the first time
     protected void initialize() 
@@ -31,6 +38,8 @@ public class DownIn extends Command {
  
     // Make this return true when this Command no longer needs to run execute()
     protected boolean isFinished() {
+      if (timeout_sec == 0)
+      {
       if (Robot.oi.btnOutIntake.get())
       {
         return CommandUtils.stateChange(this, new ThroatPassOff());
@@ -39,6 +48,14 @@ public class DownIn extends Command {
       {
         return CommandUtils.stateChange(this, new Idle());
       }
+      }
+      else
+      {
+        if (timeSinceInitialized() > timeout_sec)
+        {
+          return CommandUtils.stateChange(this, new Idle());
+        }
+      }
       
       return false;
     }
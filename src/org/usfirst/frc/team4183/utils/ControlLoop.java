@@ -1,7 +1,5 @@
 package org.usfirst.frc.team4183.utils;
 
-import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
-
 // Yes this is just a re-invention (very simplified) of PIDController.
 // I just don't trust the code in PIDController - overly complicated
 // and the synchronization looks VERY ad-hoc and buggy. 
@@ -16,8 +14,22 @@ import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
  * 2) Call start()
  * 3) ControlLoop will periodically call ControlLoopUser.getFeedback(), you provide the loop feedback value;
  *    and ControlLoopUser.setError(), you use the error value to drive the plant.
- *    Note these calls are happening in a ControlLoop's separate thread.
+ *    Note these calls are happening on the ControlLoopExecutor's thread, which is
+ *    shared by every ControlLoop, so keep them short.
+ *    If the loop is given a PIDFController, setError() is handed the controller's
+ *    output (computed from the set point and feedback) instead of the raw error.
  * 4) Call stop() when appropriate (you have to determine when that is).
+ * 
+ * The loop runs at a fixed rate: each cycle starts on a deadline computed from the
+ * start time (start + n * period) on the monotonic clock, so the time taken by the
+ * user's calls does not stretch the period. If the loop falls a whole period or
+ * more behind, the missed cycles are dropped (not run back to back) and counted.
+ * The actual period and the execution time of each cycle are kept in histograms.
+ * (See ControlLoopExecutor for how the loops share a thread.)
+ * 
+ * With logging enabled, each cycle's error, output and timing are put in a
+ * TelemetryRing, which never blocks; the TelemetryPublisher thread decimates
+ * them to the SmartDashboard (the error keeps the logging key itself).
  *    
  * @author twilson
  *
@@ -28,10 +40,23 @@ public class ControlLoop {
 	private final static long DEFAULT_MSECS = 20;  
 	private final long msecs;
 	private volatile double setPoint;
-	private volatile String loggingKey = "";
+	private volatile TelemetryRing telemetry = null;		// null when not logging
+	
+	// Enough samples for several publish periods at the fastest loop rate
+	private final static int TELEMETRY_CAPACITY = 64;
 	
-	private final LoopThread loopThread;
 	private final ControlLoopUser user;
+	private final PIDFController controller;		// null to hand back the raw error
+	
+	// Guards running against stopping, so no cycle runs after stop() returns
+	private final Object cycleLock = new Object();
+	private boolean running = false;
+	private long lastStart = 0;
+	
+	// Actual time between cycle starts, and time spent in each cycle (ms)
+	private final Histogram period_ms;
+	private final Histogram execution_ms;
+	private volatile long missedDeadlines = 0;
 	
 	/**
 	 * User of ControlLoop must provide an implementation of this interface
@@ -67,17 +92,46 @@ public class ControlLoop {
 	 * @param msecs  The loop interval
 	 */
 	public ControlLoop( ControlLoopUser user, double setPoint, long msecs) {
+		this( user, setPoint, msecs, null);
+	}
+	
+	/**
+	 * Constructor
+	 * @param user  The user of this class
+	 * @param setPoint  The loop set point
+	 * @param msecs  The loop interval
+	 * @param controller  Computes what is passed to setError (its gains may be changed while running)
+	 */
+	public ControlLoop( ControlLoopUser user, double setPoint, long msecs, PIDFController controller) {
 		this.user = user;
 		this.setPoint = setPoint;
 		this.msecs = msecs;
-	
-		loopThread = new LoopThread();
-		loopThread.setPriority(Thread.NORM_PRIORITY+2);		
+		this.controller = controller;
+		
+		// 0.25 ms bins out to twice the period (period) and the period (execution)
+		long span = Math.max(1, msecs);
+		period_ms = new Histogram("ControlLoop period (ms)", 0.0, 2.0 * span, (int)(8 * span));
+		execution_ms = new Histogram("ControlLoop execution (ms)", 0.0, span, (int)(4 * span));
 	}
 	
 	
+	/**
+	 * Publish the loop's error, output, period and execution time
+	 * @param loggingKey  SmartDashboard key ("" to stop logging)
+	 */
 	public void enableLogging( String loggingKey) {
-		this.loggingKey = loggingKey;
+		TelemetryPublisher publisher = TelemetryPublisher.getInstance();
+		if( telemetry != null)
+			publisher.remove( telemetry);
+		
+		if( loggingKey.equals("")) {
+			telemetry = null;
+		}
+		else {
+			TelemetryRing ring = new TelemetryRing( loggingKey, 4, TELEMETRY_CAPACITY);
+			publisher.add( ring, "", "Output", "Period_ms", "Exec_ms");
+			telemetry = ring;
+		}
 	}
 	
 	
@@ -92,60 +146,90 @@ public class ControlLoop {
 	
 	/**
 	 * Start operation
+	 * Does nothing if the loop is already running (it is only scheduled once).
 	 */
 	public void start() {
-		loopThread.start();
+		synchronized( cycleLock) {
+			if( running)
+				return;
+			running = true;
+			lastStart = 0;
+			if( controller != null)
+				controller.reset();
+		}
+		ControlLoopExecutor.getInstance().add( this, msecs);
 	}
 	
 	/**
 	 * Stop operation
-	 * Does not return until loop thread has exited.
+	 * Does not return until any cycle in progress has finished; no cycle runs after.
 	 */
 	public void stop() {
 		
-		// Signal control loop to quit
-		loopThread.quit();
+		// Take the loop off the executor
+		ControlLoopExecutor.getInstance().remove( this);
 		
-		// Wait for thread to exit
-		try {
-			loopThread.join();
-		} catch (InterruptedException e) {
-			// Per this excellent article:
-			// http://www.ibm.com/developerworks/library/j-jtp05236/
-			Thread.currentThread().interrupt();
+		// Wait for a cycle in progress on the executor thread to finish
+		synchronized( cycleLock) {
+			running = false;
 		}
 		
 		user.setError(0.0);
 	}
 	
 	
-	// This Thread implements the control loop
-	private class LoopThread extends Thread {
-						
-		private void quit() {
-			interrupt();
-		}
-		
-		@Override
-		public void run( ) {
-									
-			// Loop until signaled to quit
-			while( !isInterrupted()) {
+	/**
+	 * One cycle of the loop; called by the ControlLoopExecutor
+	 * @param start_ns System.nanoTime() when the executor started the cycle's group
+	 */
+	void runCycle( long start_ns) {
+		synchronized( cycleLock) {
+			if( !running)
+				return;
+			
+			long start = System.nanoTime();
+			double dt_sec = msecs / 1000.0;
+			double period = 0.0;
+			if( lastStart != 0) {
+				period = (start_ns - lastStart) / 1.0e6;
+				period_ms.record( period);
+				dt_sec = (start_ns - lastStart) / 1.0e9;
+			}
+			lastStart = start_ns;
 
-				double error = setPoint - user.getFeedback();
-				
-				if( !loggingKey.equals(""))
-					SmartDashboard.putNumber(loggingKey, error);
-					
-				user.setError( error);				
-				
-				// Delay
-				try {
-					Thread.sleep(msecs);
-				} catch (InterruptedException e) {
-					interrupt();
-				}				
-			}			
+			double feedback = user.getFeedback();
+			double error = setPoint - feedback;
+			double output = ( controller != null) ? controller.update( setPoint, feedback, dt_sec) : error;
+			user.setError( output);
+			
+			double execution = (System.nanoTime() - start) / 1.0e6;
+			execution_ms.record( execution);
+			
+			TelemetryRing ring = telemetry;
+			if( ring != null)
+				ring.put( start_ns / 1.0e9, error, output, period, execution);
 		}
-	}		
+	}
+	
+	void addMissedDeadlines( long missed) {
+		missedDeadlines += missed;
+	}
+	
+	
+	/** @return actual time between the starts of consecutive cycles (ms) */
+	public Histogram getPeriodHistogram() {
+		return period_ms;
+	}
+	
+	/** @return time spent in each cycle getting feedback and setting error (ms) */
+	public Histogram getExecutionHistogram() {
+		return execution_ms;
+	}
+	
+	/** @return number of cycles skipped because the loop fell a period or more behind */
+	public long getMissedDeadlines() {
+		return missedDeadlines;
+	}
+	
+	
 }
@@ -0,0 +1,212 @@
+package org.usfirst.frc.team4183.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * ControlLoopExecutor runs every ControlLoop on one shared thread
+ *
+ * A thread per loop means another thread (and its context switches) on the
+ * dual-core roboRIO for every closed loop. Instead, loops are grouped by
+ * period and every group's deadlines are on the same grid (multiples of its
+ * period from a common epoch), so groups with harmonic periods (10, 20, 40 ms)
+ * come due at the same instants and are run from a single wakeup. Groups are
+ * run shortest period first.
+ *
+ * Deadlines are absolute (drift free) and a group
+ * that falls a period or more behind drops the missed cycles; each loop keeps
+ * its own period and execution histograms and missed-deadline count.
+ */
+public class ControlLoopExecutor
+{
+	private static ControlLoopExecutor instance;
+
+	/** Loops that share a period */
+	private static class Group
+	{
+		final long period_ns;
+		long deadline;
+		final List<ControlLoop> loops = new ArrayList<>();
+		volatile ControlLoop[] snapshot = new ControlLoop[0];	// What the executor thread runs
+
+		Group(long period_ns, long deadline)
+		{
+			this.period_ns = period_ns;
+			this.deadline = deadline;
+		}
+	}
+
+	private final long epoch = System.nanoTime();
+	private final List<Group> groups = new ArrayList<>();		// Sorted by period; guarded by this
+	private volatile Group[] schedule = new Group[0];			// Copy for the executor thread
+	private final ExecutorThread thread;
+	private volatile long wakeups = 0;
+
+	private ControlLoopExecutor()
+	{
+		thread = new ExecutorThread();
+		thread.setDaemon(true);
+		thread.setPriority(Thread.NORM_PRIORITY+2);
+		thread.start();
+	}
+
+	/**
+	 * @return the executor (its thread is started on first use)
+	 */
+	public static synchronized ControlLoopExecutor getInstance()
+	{
+		if (instance == null)
+		{
+			instance = new ControlLoopExecutor();
+		}
+		return instance;
+	}
+
+	/**
+	 * Start running a loop at its period
+	 */
+	synchronized void add(ControlLoop loop, long period_ms)
+	{
+		long period_ns = Math.max(1, period_ms) * 1000000L;
+		Group group = null;
+		int at = 0;
+		for (; at < groups.size(); ++at)
+		{
+			Group g = groups.get(at);
+			if (g.period_ns == period_ns)
+			{
+				group = g;
+				break;
+			}
+			if (g.period_ns > period_ns)
+			{
+				break;
+			}
+		}
+		if (group == null)
+		{
+			// First deadline on the group's grid, so harmonics line up
+			long now = System.nanoTime();
+			long n = (now - epoch) / period_ns + 1;
+			group = new Group(period_ns, epoch + n * period_ns);
+			groups.add(at, group);
+			schedule = groups.toArray(new Group[groups.size()]);
+		}
+		group.loops.add(loop);
+		group.snapshot = group.loops.toArray(new ControlLoop[group.loops.size()]);
+		LockSupport.unpark(thread);		// The new deadline may be the earliest
+	}
+
+	/**
+	 * Stop running a loop
+	 * The loop may still be in its last cycle when this returns (see ControlLoop.stop)
+	 */
+	synchronized void remove(ControlLoop loop)
+	{
+		for (int i = 0; i < groups.size(); ++i)
+		{
+			Group group = groups.get(i);
+			if (group.loops.remove(loop))
+			{
+				group.snapshot = group.loops.toArray(new ControlLoop[group.loops.size()]);
+				if (group.loops.isEmpty())
+				{
+					groups.remove(i);
+					schedule = groups.toArray(new Group[groups.size()]);
+				}
+				return;
+			}
+		}
+	}
+
+	/** @return number of distinct periods being run */
+	public int getGroupCount()
+	{
+		return schedule.length;
+	}
+
+	/** @return number of times the executor thread has woken to run loops */
+	public long getWakeups()
+	{
+		return wakeups;
+	}
+
+	private class ExecutorThread extends Thread
+	{
+		ExecutorThread()
+		{
+			super("ControlLoopExecutor");
+		}
+
+		@Override
+		public void run()
+		{
+			while (true)
+			{
+				Group[] groups = schedule;
+				long now = System.nanoTime();
+
+				// Run everything that is due, shortest period first
+				long next = Long.MAX_VALUE;
+				boolean ran = false;
+				for (Group group : groups)
+				{
+					if (now - group.deadline >= 0)
+					{
+						ran = true;
+						long start = System.nanoTime();
+						for (ControlLoop loop : group.snapshot)
+						{
+							try
+							{
+								loop.runCycle(start);
+							}
+							catch (RuntimeException e)
+							{
+								// One bad loop must not stop all of the others
+								e.printStackTrace();
+							}
+						}
+
+						// Next deadline is always on the group's grid
+						group.deadline += group.period_ns;
+						long after = System.nanoTime();
+						if (after - group.deadline >= group.period_ns)
+						{
+							long behind = (after - group.deadline) / group.period_ns;
+							group.deadline += behind * group.period_ns;
+							for (ControlLoop loop : group.snapshot)
+							{
+								loop.addMissedDeadlines(behind);
+							}
+						}
+					}
+					if (next == Long.MAX_VALUE || group.deadline - next < 0)
+					{
+						next = group.deadline;
+					}
+				}
+				if (ran)
+				{
+					++wakeups;
+				}
+
+				// Sleep until the earliest deadline (or until a loop is added);
+				// parkNanos can return early, which only costs another pass
+				if (next == Long.MAX_VALUE)
+				{
+					LockSupport.park(this);
+				}
+				else
+				{
+					long remaining = next - System.nanoTime();
+					if (remaining > 0)
+					{
+						LockSupport.parkNanos(this, remaining);
+					}
+				}
+			}
+		}
+	}
+}
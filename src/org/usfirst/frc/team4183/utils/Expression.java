@@ -0,0 +1,148 @@
+package org.usfirst.frc.team4183.utils;
+
+/**
+ * Expression evaluates simple arithmetic written in path files, so values can
+ * keep the arithmetic that shows where they came from (e.g., -1.245+0.3-0.3048)
+ *
+ * Supports numbers, + - * /, unary minus, parentheses, and the constants
+ * pi and ft (0.3048, meters per foot). Whitespace is ignored.
+ */
+public class Expression
+{
+	private final String text;
+	private int pos = 0;
+
+	private Expression(String text)
+	{
+		this.text = text;
+	}
+
+	/**
+	 * @param text the expression
+	 * @return its value
+	 * @throws IllegalArgumentException if the expression can't be parsed
+	 */
+	public static double evaluate(String text)
+	{
+		Expression expression = new Expression(text);
+		double value = expression.sum();
+		expression.skipSpaces();
+		if (expression.pos != text.length())
+		{
+			throw expression.error("unexpected '" + text.charAt(expression.pos) + "'");
+		}
+		return value;
+	}
+
+	// sum := product (('+' | '-') product)*
+	private double sum()
+	{
+		double value = product();
+		while (true)
+		{
+			if (accept('+'))
+				value += product();
+			else if (accept('-'))
+				value -= product();
+			else
+				return value;
+		}
+	}
+
+	// product := unary (('*' | '/') unary)*
+	private double product()
+	{
+		double value = unary();
+		while (true)
+		{
+			if (accept('*'))
+				value *= unary();
+			else if (accept('/'))
+				value /= unary();
+			else
+				return value;
+		}
+	}
+
+	// unary := ('-' | '+') unary | '(' sum ')' | number | name
+	private double unary()
+	{
+		if (accept('-'))
+			return -unary();
+		if (accept('+'))
+			return unary();
+		if (accept('('))
+		{
+			double value = sum();
+			if (! accept(')'))
+			{
+				throw error("missing ')'");
+			}
+			return value;
+		}
+
+		skipSpaces();
+		int start = pos;
+		if (pos < text.length() && Character.isLetter(text.charAt(pos)))
+		{
+			while (pos < text.length() && Character.isLetter(text.charAt(pos)))
+				++pos;
+			String name = text.substring(start, pos);
+			switch (name)
+			{
+			case "pi":
+				return Math.PI;
+			case "ft":
+				return 0.3048;
+			default:
+				throw error("unknown name '" + name + "'");
+			}
+		}
+
+		while (pos < text.length() && (Character.isDigit(text.charAt(pos)) || text.charAt(pos) == '.'))
+			++pos;
+		// Exponent (e.g., 1e-3)
+		if (pos > start && pos < text.length() && (text.charAt(pos) == 'e' || text.charAt(pos) == 'E'))
+		{
+			++pos;
+			if (pos < text.length() && (text.charAt(pos) == '-' || text.charAt(pos) == '+'))
+				++pos;
+			while (pos < text.length() && Character.isDigit(text.charAt(pos)))
+				++pos;
+		}
+		if (pos == start)
+		{
+			throw error("expected a number");
+		}
+		try
+		{
+			return Double.parseDouble(text.substring(start, pos));
+		}
+		catch (NumberFormatException e)
+		{
+			throw error("bad number '" + text.substring(start, pos) + "'");
+		}
+	}
+
+	private boolean accept(char c)
+	{
+		skipSpaces();
+		if (pos < text.length() && text.charAt(pos) == c)
+		{
+			++pos;
+			return true;
+		}
+		return false;
+	}
+
+	private void skipSpaces()
+	{
+		while (pos < text.length() && Character.isWhitespace(text.charAt(pos)))
+			++pos;
+	}
+
+	private IllegalArgumentException error(String message)
+	{
+		return new IllegalArgumentException(String.format("%s at %d in \"%s\"", message, pos, text));
+	}
+}
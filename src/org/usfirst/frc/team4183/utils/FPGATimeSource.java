@@ -0,0 +1,16 @@
+package org.usfirst.frc.team4183.utils;
+
+import edu.wpi.first.wpilibj.RobotController;
+
+/**
+ * FPGATimeSource reads the roboRIO FPGA clock (microseconds since the FPGA
+ * started; monotonic and unaffected by changes to the wall clock)
+ */
+public class FPGATimeSource implements TimeSource
+{
+	@Override
+	public long nanoTime()
+	{
+		return RobotController.getFPGATime() * 1000L;
+	}
+}
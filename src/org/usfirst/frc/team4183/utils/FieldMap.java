@@ -0,0 +1,385 @@
+package org.usfirst.frc.team4183.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.usfirst.frc.team4183.robot.RobotMap;
+import org.usfirst.frc.team4183.utils.Positions.StartingPosition;
+
+/**
+ * FieldMap is a model of the 2018 (POWER UP) field for checking trajectories
+ *
+ * Field frame: origin at the right corner of our alliance wall (as seen from the
+ * driver station), x out toward the far alliance, y to the left; meters.
+ * Our paths start at (0,0) heading 0 from the starting position, so a path is
+ * placed on the field by the start pose.
+ *
+ * The field elements are rectangles (dimensions approximate, from the game
+ * manual drawings). They are indexed in a uniform grid so checking a footprint
+ * only tests the few elements in the cells it covers. Checking every path takes
+ * well under a millisecond per path, so it is done at every boot and reload.
+ *
+ * Driving up against the element being scored on is expected, so contact with
+ * a scoring element in the last part of a path is allowed (see checkTrajectory).
+ */
+public class FieldMap
+{
+	public static final double FIELD_LENGTH_m = RobotMap.inch2Meter(648.0);
+	public static final double FIELD_WIDTH_m = RobotMap.inch2Meter(324.0);
+
+	// Robot footprint with bumpers
+	public static final double ROBOT_LENGTH_in = 38.0;
+	public static final double ROBOT_WIDTH_in = 33.0;
+	public static final double ROBOT_LENGTH_m = RobotMap.inch2Meter(ROBOT_LENGTH_in);
+	public static final double ROBOT_WIDTH_m = RobotMap.inch2Meter(ROBOT_WIDTH_in);
+
+	private static final double CELL_m = 0.3048;
+
+	/** An axis-aligned field element */
+	public static class Obstacle
+	{
+		public final String name;
+		public final double xMin, yMin, xMax, yMax;
+		public final boolean scoring;		// true if we expect to drive up against it
+
+		Obstacle(String name, double xMin_in, double yMin_in, double xMax_in, double yMax_in, boolean scoring)
+		{
+			this.name = name;
+			this.xMin = RobotMap.inch2Meter(xMin_in);
+			this.yMin = RobotMap.inch2Meter(yMin_in);
+			this.xMax = RobotMap.inch2Meter(xMax_in);
+			this.yMax = RobotMap.inch2Meter(yMax_in);
+			this.scoring = scoring;
+		}
+	}
+
+	/** A place where the footprint overlapped something */
+	public static class Collision
+	{
+		public final String trajectoryName;
+		public final String obstacleName;		// "FIELD WALL" for leaving the field
+		public final int segment;
+		public final double time_sec;
+
+		Collision(String trajectoryName, String obstacleName, int segment, double time_sec)
+		{
+			this.trajectoryName = trajectoryName;
+			this.obstacleName = obstacleName;
+			this.segment = segment;
+			this.time_sec = time_sec;
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format("%s hits %s at segment %d (%.2f sec)", trajectoryName, obstacleName, segment, time_sec);
+		}
+	}
+
+	/** Where (and which way) a path starts on the field */
+	public static class Pose
+	{
+		public final double x, y, heading;		// m, m, radians
+
+		public Pose(double x, double y, double heading)
+		{
+			this.x = x;
+			this.y = y;
+			this.heading = heading;
+		}
+	}
+
+	/** Where the robot stops to score */
+	public enum ScoringLocation
+	{
+		LEFT_SWITCH,
+		RIGHT_SWITCH,
+		LEFT_SCALE,
+		RIGHT_SCALE
+	}
+
+	private final Obstacle[] obstacles = new Obstacle[] {
+		//            name                 x min   y min   x max   y max  (inches)
+		new Obstacle("NEAR SWITCH",        140.0,  85.25, 196.0,  238.75, true),
+		new Obstacle("PLATFORM",           261.47, 95.25, 386.53, 228.75, false),
+		new Obstacle("RIGHT SCALE PLATE",  299.65, 71.57, 348.35, 107.57, true),
+		new Obstacle("LEFT SCALE PLATE",   299.65, 216.43, 348.35, 252.43, true),
+		new Obstacle("FAR SWITCH",         452.0,  85.25, 508.0,  238.75, false),
+	};
+
+	// Uniform grid; each cell lists the obstacles that overlap it
+	private final int columns;
+	private final int rows;
+	private final int[][] cells;
+
+	public FieldMap()
+	{
+		columns = (int)Math.ceil(FIELD_LENGTH_m / CELL_m);
+		rows = (int)Math.ceil(FIELD_WIDTH_m / CELL_m);
+		cells = new int[columns * rows][];
+
+		List<List<Integer>> lists = new ArrayList<>(columns * rows);
+		for (int i = 0; i < columns * rows; ++i)
+		{
+			lists.add(new ArrayList<>());
+		}
+		for (int k = 0; k < obstacles.length; ++k)
+		{
+			Obstacle o = obstacles[k];
+			for (int c = column(o.xMin); c <= column(o.xMax); ++c)
+				for (int r = row(o.yMin); r <= row(o.yMax); ++r)
+					lists.get(r * columns + c).add(k);
+		}
+		for (int i = 0; i < cells.length; ++i)
+		{
+			List<Integer> list = lists.get(i);
+			cells[i] = new int[list.size()];
+			for (int n = 0; n < list.size(); ++n)
+			{
+				cells[i][n] = list.get(n);
+			}
+		}
+	}
+
+	// Starting positions: the robot's right side bumper, measured from the right
+	// side wall. The side robots line up with their outer bumper square with the
+	// outside of the near switch fence, which puts the first leg of the side
+	// paths down the middle of the lane between the switch and the side wall.
+	// The center robot lines up just left of the exchange zone.
+	private static final double RIGHT_START_BUMPER_in = 85.25;
+	private static final double CENTER_START_BUMPER_in = 139.5;
+	private static final double LEFT_START_BUMPER_in = 238.75 - ROBOT_WIDTH_in;
+
+	/**
+	 * @return the pose our paths start from for each starting position
+	 *         (back bumper against the alliance wall, facing downfield; the
+	 *         pose is the robot center, half a robot in from the bumpers)
+	 */
+	public static Pose startPose(StartingPosition position)
+	{
+		double x = ROBOT_LENGTH_m / 2.0;
+		double halfWidth_in = ROBOT_WIDTH_in / 2.0;
+		switch (position)
+		{
+		case LEFT:
+			return new Pose(x, RobotMap.inch2Meter(LEFT_START_BUMPER_in + halfWidth_in), 0.0);
+		case CENTER:
+			return new Pose(x, RobotMap.inch2Meter(CENTER_START_BUMPER_in + halfWidth_in), 0.0);
+		case RIGHT:
+		default:
+			return new Pose(x, RobotMap.inch2Meter(RIGHT_START_BUMPER_in + halfWidth_in), 0.0);
+		}
+	}
+
+	/**
+	 * @return the pose to score from at each location: beside the switch fence
+	 *         facing it, or in front of the scale plate beside the platform
+	 */
+	public static Pose scoringPose(ScoringLocation location)
+	{
+		double halfLength_in = ROBOT_LENGTH_in / 2.0;
+		double halfWidth_in = ROBOT_WIDTH_in / 2.0;
+		switch (location)
+		{
+		case LEFT_SWITCH:
+			return new Pose(RobotMap.inch2Meter(168.0), RobotMap.inch2Meter(238.75 + halfLength_in + 2.0), -Math.PI / 2.0);
+		case RIGHT_SWITCH:
+			return new Pose(RobotMap.inch2Meter(168.0), RobotMap.inch2Meter(85.25 - halfLength_in - 2.0), Math.PI / 2.0);
+		case LEFT_SCALE:
+			return new Pose(RobotMap.inch2Meter(299.65 - halfLength_in - 4.0), RobotMap.inch2Meter(228.75 + halfWidth_in + 3.0), 0.0);
+		case RIGHT_SCALE:
+		default:
+			return new Pose(RobotMap.inch2Meter(299.65 - halfLength_in - 4.0), RobotMap.inch2Meter(95.25 - halfWidth_in - 3.0), 0.0);
+		}
+	}
+
+	/**
+	 * Sweep the robot footprint along the center of a trajectory
+	 * @param trajectory to check
+	 * @param start pose on the field of the trajectory's (0,0)
+	 * @param endAllowance_m contact with a scoring element is allowed within this
+	 *        distance of the end of the path
+	 * @return every place the footprint hits a field element or leaves the field
+	 *         (at most one entry per element per trajectory)
+	 */
+	public List<Collision> checkTrajectory(RobotTrajectory trajectory, Pose start, double endAllowance_m)
+	{
+		List<Collision> collisions = new ArrayList<>();
+		PrimitiveTrajectory center = trajectory.center;
+		int length = center.length();
+		if (length == 0)
+		{
+			return collisions;
+		}
+
+		boolean[] reported = new boolean[obstacles.length + 1];		// last is the wall
+		double endDistance = center.position[length - 1];
+		double cosStart = Math.cos(start.heading);
+		double sinStart = Math.sin(start.heading);
+		double[] cornersX = new double[4];
+		double[] cornersY = new double[4];
+
+		for (int i = 0; i < length; ++i)
+		{
+			// Pose of the robot on the field at this point
+			double x = start.x + center.x[i] * cosStart - center.y[i] * sinStart;
+			double y = start.y + center.x[i] * sinStart + center.y[i] * cosStart;
+			double heading = start.heading + center.heading[i];
+			footprint(x, y, heading, cornersX, cornersY);
+
+			double xMin = Math.min(Math.min(cornersX[0], cornersX[1]), Math.min(cornersX[2], cornersX[3]));
+			double xMax = Math.max(Math.max(cornersX[0], cornersX[1]), Math.max(cornersX[2], cornersX[3]));
+			double yMin = Math.min(Math.min(cornersY[0], cornersY[1]), Math.min(cornersY[2], cornersY[3]));
+			double yMax = Math.max(Math.max(cornersY[0], cornersY[1]), Math.max(cornersY[2], cornersY[3]));
+
+			if (xMin < 0.0 || yMin < 0.0 || xMax > FIELD_LENGTH_m || yMax > FIELD_WIDTH_m)
+			{
+				if (! reported[obstacles.length])
+				{
+					reported[obstacles.length] = true;
+					collisions.add(new Collision(trajectory.name, "FIELD WALL", i, center.timeAfter(i + 1)));
+				}
+			}
+
+			boolean nearEnd = (endDistance - center.position[i]) <= endAllowance_m;
+			int cMin = column(xMin), cMax = column(xMax);
+			int rMin = row(yMin), rMax = row(yMax);
+			for (int c = cMin; c <= cMax; ++c)
+			{
+				for (int r = rMin; r <= rMax; ++r)
+				{
+					for (int k : cells[r * columns + c])
+					{
+						Obstacle o = obstacles[k];
+						if (reported[k] || (nearEnd && o.scoring))
+						{
+							continue;
+						}
+						if (overlaps(o, cornersX, cornersY, xMin, yMin, xMax, yMax))
+						{
+							reported[k] = true;
+							collisions.add(new Collision(trajectory.name, o.name, i, center.timeAfter(i + 1)));
+						}
+					}
+				}
+			}
+		}
+		return collisions;
+	}
+
+	/**
+	 * Sweep the robot footprint along trajectories that run one after another
+	 * (e.g., chained), each starting where the one before it ended
+	 * @param start pose of the robot (the way it faces) at the start of the first
+	 * @param endAllowance_m as for checkTrajectory, at the end of each part
+	 * @return every place the footprint hits a field element or leaves the field
+	 */
+	public List<Collision> checkChain(Pose start, double endAllowance_m, RobotTrajectory... parts)
+	{
+		List<Collision> collisions = new ArrayList<>();
+		Pose pose = start;
+		for (RobotTrajectory part : parts)
+		{
+			// A reversed part is laid out in its direction of travel, which is
+			// opposite to the way the robot faces
+			double flip = part.isReversed() ? Math.PI : 0.0;
+			Pose travel = new Pose(pose.x, pose.y, pose.heading + flip);
+			collisions.addAll(checkTrajectory(part, travel, endAllowance_m));
+			Pose end = endPose(part, travel);
+			pose = new Pose(end.x, end.y, end.heading - flip);
+		}
+		return collisions;
+	}
+
+	/**
+	 * @return where a trajectory started from a pose ends (heading in the
+	 *         trajectory's direction of travel)
+	 */
+	public static Pose endPose(RobotTrajectory trajectory, Pose start)
+	{
+		PrimitiveTrajectory center = trajectory.center;
+		int last = center.length() - 1;
+		if (last < 0)
+		{
+			return start;
+		}
+		double c = Math.cos(start.heading);
+		double s = Math.sin(start.heading);
+		return new Pose(start.x + center.x[last] * c - center.y[last] * s,
+				        start.y + center.x[last] * s + center.y[last] * c,
+				        start.heading + center.heading[last]);
+	}
+
+	private static void footprint(double x, double y, double heading, double[] cornersX, double[] cornersY)
+	{
+		double c = Math.cos(heading);
+		double s = Math.sin(heading);
+		double hl = ROBOT_LENGTH_m / 2.0;
+		double hw = ROBOT_WIDTH_m / 2.0;
+		double[] dx = {hl, hl, -hl, -hl};
+		double[] dy = {hw, -hw, -hw, hw};
+		for (int k = 0; k < 4; ++k)
+		{
+			cornersX[k] = x + dx[k] * c - dy[k] * s;
+			cornersY[k] = y + dx[k] * s + dy[k] * c;
+		}
+	}
+
+	/**
+	 * Separating axis test of the footprint (a rotated rectangle) against an
+	 * axis-aligned obstacle
+	 */
+	private static boolean overlaps(Obstacle o, double[] cornersX, double[] cornersY,
+			                        double xMin, double yMin, double xMax, double yMax)
+	{
+		// The obstacle's axes (x and y)
+		if (xMax < o.xMin || xMin > o.xMax || yMax < o.yMin || yMin > o.yMax)
+		{
+			return false;
+		}
+
+		// The footprint's two axes (edges 0-1 and 1-2)
+		for (int e = 0; e < 2; ++e)
+		{
+			double ax = cornersX[e + 1] - cornersX[e];
+			double ay = cornersY[e + 1] - cornersY[e];
+
+			double fMin = Double.POSITIVE_INFINITY, fMax = Double.NEGATIVE_INFINITY;
+			for (int k = 0; k < 4; ++k)
+			{
+				double p = cornersX[k] * ax + cornersY[k] * ay;
+				fMin = Math.min(fMin, p);
+				fMax = Math.max(fMax, p);
+			}
+			double oMin = Double.POSITIVE_INFINITY, oMax = Double.NEGATIVE_INFINITY;
+			double[] ox = {o.xMin, o.xMax, o.xMax, o.xMin};
+			double[] oy = {o.yMin, o.yMin, o.yMax, o.yMax};
+			for (int k = 0; k < 4; ++k)
+			{
+				double p = ox[k] * ax + oy[k] * ay;
+				oMin = Math.min(oMin, p);
+				oMax = Math.max(oMax, p);
+			}
+			if (fMax < oMin || fMin > oMax)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private int column(double x)
+	{
+		return Math.max(0, Math.min(columns - 1, (int)Math.floor(x / CELL_m)));
+	}
+
+	private int row(double y)
+	{
+		return Math.max(0, Math.min(rows - 1, (int)Math.floor(y / CELL_m)));
+	}
+
+	public Obstacle[] getObstacles()
+	{
+		return obstacles.clone();
+	}
+}
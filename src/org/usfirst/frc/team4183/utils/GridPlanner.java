@@ -0,0 +1,496 @@
+package org.usfirst.frc.team4183.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.usfirst.frc.team4183.utils.FieldMap.Pose;
+
+import jaci.pathfinder.Waypoint;
+
+/**
+ * GridPlanner finds a route between any two poses on the field and returns it
+ * as waypoints for Pathfinder, so routes can be built on demand rather than
+ * only from the fixed lists in PathPlans
+ *
+ * At construction the FieldMap elements and walls are rasterized into an
+ * occupancy grid and a distance transform gives each cell its distance to the
+ * nearest occupied cell. A cell is passable when that clearance is at least
+ * half the robot width plus a margin, so the search treats the robot as a point.
+ *
+ * plan() then:
+ * 		runs A* (8-connected, octile heuristic) over the passable cells; cells
+ * 		  with little clearance cost a bit more so the route keeps to the middle
+ * 		  of the corridor
+ * 		pulls the cell path tight (keeping only the cells that can't be seen
+ * 		  from the last kept one) to get a few corner points
+ * 		turns the corners into waypoints relative to the start pose, with each
+ * 		  heading bisecting the turn, which is the form PathPlans uses
+ *
+ * The search ends at an approach point backed off from the goal along its
+ * heading, and the route drives straight in from there; otherwise Pathfinder
+ * fits whatever turn is needed to meet the goal heading into the last leg,
+ * which the search never saw. A route that would turn sharply onto the
+ * approach leg is searched again to an entry point beside it, so the turn is
+ * split across two waypoints.
+ *
+ * The search arrays are allocated once and reused (plan is synchronized), so a
+ * plan takes a few milliseconds. The fitted trajectory can still cut a corner
+ * that the straight segments did not; check it with FieldMap.checkTrajectory.
+ */
+public class GridPlanner
+{
+	private static final double CELL_m = 0.05;
+	private static final double MARGIN_m = 0.05;			// Beyond half the robot width
+	private static final double PREFERRED_CLEARANCE_m = 0.75;	// Less than this costs extra
+	private static final double CLEARANCE_COST = 2.0;		// Per meter traveled, at no spare clearance
+	private static final double MIN_WAYPOINT_SPACING_m = 0.3;
+	private static final double APPROACH_m = 0.6;			// Straight in to the goal; at least a turning radius
+	private static final double MAX_APPROACH_TURN_rad = Math.toRadians(45.0);	// Onto the approach leg
+
+	private static final double SQRT2 = Math.sqrt(2.0);
+	private static final int[] STEP_COLUMN = {1, -1, 0, 0, 1, 1, -1, -1};
+	private static final int[] STEP_ROW = {0, 0, 1, -1, 1, -1, 1, -1};
+
+	private final int columns;
+	private final int rows;
+	private final float[] clearance;		// m to the nearest occupied cell
+	private final double minClearance;
+
+	// Search state, reused by every plan
+	private final float[] g;
+	private final int[] parent;
+	private final int[] visited;			// == search when g/parent are valid for this search
+	private final int[] closed;				// == search when expanded in this search
+	private int search = 0;
+	private int[] heap;
+	private float[] heapKey;
+	private int heapSize;
+
+	public GridPlanner(FieldMap field)
+	{
+		columns = (int)Math.ceil(FieldMap.FIELD_LENGTH_m / CELL_m);
+		rows = (int)Math.ceil(FieldMap.FIELD_WIDTH_m / CELL_m);
+		int cells = columns * rows;
+		minClearance = FieldMap.ROBOT_WIDTH_m / 2.0 + MARGIN_m;
+
+		boolean[] occupied = new boolean[cells];
+		for (FieldMap.Obstacle o : field.getObstacles())
+		{
+			int c0 = column(o.xMin), c1 = column(o.xMax);
+			int r0 = row(o.yMin), r1 = row(o.yMax);
+			for (int r = r0; r <= r1; ++r)
+				for (int c = c0; c <= c1; ++c)
+					occupied[r * columns + c] = true;
+		}
+		clearance = distanceTransform(occupied);
+
+		g = new float[cells];
+		parent = new int[cells];
+		visited = new int[cells];
+		closed = new int[cells];
+		heap = new int[cells];
+		heapKey = new float[cells];
+	}
+
+	/**
+	 * Two pass chamfer distance (steps of 1 and sqrt(2) cells); the walls count
+	 * as occupied cells just outside the grid
+	 */
+	private float[] distanceTransform(boolean[] occupied)
+	{
+		float[] d = new float[columns * rows];
+		float step = (float)CELL_m;
+		float diagonal = (float)(CELL_m * SQRT2);
+		for (int r = 0; r < rows; ++r)
+		{
+			for (int c = 0; c < columns; ++c)
+			{
+				int i = r * columns + c;
+				if (occupied[i])
+				{
+					d[i] = 0.0f;
+					continue;
+				}
+				// Distance to the nearest wall
+				int toWall = Math.min(Math.min(c, columns - 1 - c), Math.min(r, rows - 1 - r)) + 1;
+				d[i] = toWall * step;
+			}
+		}
+		for (int r = 0; r < rows; ++r)
+		{
+			for (int c = 0; c < columns; ++c)
+			{
+				int i = r * columns + c;
+				if (c > 0)
+					d[i] = Math.min(d[i], d[i - 1] + step);
+				if (r > 0)
+				{
+					d[i] = Math.min(d[i], d[i - columns] + step);
+					if (c > 0)
+						d[i] = Math.min(d[i], d[i - columns - 1] + diagonal);
+					if (c < columns - 1)
+						d[i] = Math.min(d[i], d[i - columns + 1] + diagonal);
+				}
+			}
+		}
+		for (int r = rows - 1; r >= 0; --r)
+		{
+			for (int c = columns - 1; c >= 0; --c)
+			{
+				int i = r * columns + c;
+				if (c < columns - 1)
+					d[i] = Math.min(d[i], d[i + 1] + step);
+				if (r < rows - 1)
+				{
+					d[i] = Math.min(d[i], d[i + columns] + step);
+					if (c < columns - 1)
+						d[i] = Math.min(d[i], d[i + columns + 1] + diagonal);
+					if (c > 0)
+						d[i] = Math.min(d[i], d[i + columns - 1] + diagonal);
+				}
+			}
+		}
+		return d;
+	}
+
+	/**
+	 * Plan a route on the field
+	 * @param start pose on the field where the route begins (the robot's pose)
+	 * @param goal pose on the field where the route ends
+	 * @return waypoints relative to the start pose (the first is 0,0,0), or null
+	 *         if there is no route, either end is too close to something, or the
+	 *         goal can't be driven straight into
+	 */
+	public synchronized Waypoint[] plan(Pose start, Pose goal)
+	{
+		int startCell = cell(start.x, start.y);
+		int goalCell = cell(goal.x, goal.y);
+		if (! passable(startCell) || ! passable(goalCell))
+		{
+			return null;
+		}
+		double approachX = goal.x - APPROACH_m * Math.cos(goal.heading);
+		double approachY = goal.y - APPROACH_m * Math.sin(goal.heading);
+		int approachCell = cell(approachX, approachY);
+		if (! passable(approachCell) || ! inView(approachCell, goalCell))
+		{
+			return null;
+		}
+		List<double[]> corners = route(start, startCell, approachCell);
+		if (corners == null)
+		{
+			return null;
+		}
+
+		// A sharp turn onto the approach leg is taken in two steps: the route is
+		// planned again to an entry point off to the side it comes in from
+		double[] prev = corners.get(corners.size() - 1);
+		double turn = Math.IEEEremainder(Math.atan2(approachY - prev[1], approachX - prev[0]) - goal.heading, 2.0 * Math.PI);
+		if (Math.abs(turn) > MAX_APPROACH_TURN_rad)
+		{
+			double entryHeading = goal.heading + Math.copySign(MAX_APPROACH_TURN_rad, turn);
+			double entryX = approachX - APPROACH_m * Math.cos(entryHeading);
+			double entryY = approachY - APPROACH_m * Math.sin(entryHeading);
+			int entryCell = cell(entryX, entryY);
+			if (! passable(entryCell) || ! inView(entryCell, approachCell))
+			{
+				return null;
+			}
+			corners = route(start, startCell, entryCell);
+			if (corners == null)
+			{
+				return null;
+			}
+			corners.add(new double[] {entryX, entryY});
+		}
+		corners.add(new double[] {approachX, approachY});
+		corners.add(new double[] {goal.x, goal.y});
+
+		return toWaypoints(corners, start, goal);
+	}
+
+	/**
+	 * Search from the start to a cell and pull the cell path tight
+	 * @return the start and the corners along the way (not the end cell), or
+	 *         null if there is no route
+	 */
+	private List<double[]> route(Pose start, int startCell, int endCell)
+	{
+		if (! search(startCell, endCell))
+		{
+			return null;
+		}
+
+		// Cell path, end back to start
+		List<Integer> path = new ArrayList<>();
+		for (int i = endCell; i != startCell; i = parent[i])
+		{
+			path.add(i);
+		}
+		path.add(startCell);
+
+		// Pull it tight: from each kept cell jump to the furthest cell in view
+		List<double[]> corners = new ArrayList<>();
+		corners.add(new double[] {start.x, start.y});
+		int from = path.size() - 1;
+		while (from > 0)
+		{
+			int to = from - 1;
+			while (to > 0 && inView(path.get(from), path.get(to - 1)))
+			{
+				--to;
+			}
+			if (to > 0)
+			{
+				corners.add(new double[] {centerX(path.get(to)), centerY(path.get(to))});
+			}
+			from = to;
+		}
+		return corners;
+	}
+
+	/**
+	 * A* from start to goal over the passable cells
+	 * @return true if the goal was reached (parent then leads back to start)
+	 */
+	private boolean search(int startCell, int goalCell)
+	{
+		++search;
+		heapSize = 0;
+		int goalColumn = goalCell % columns;
+		int goalRow = goalCell / columns;
+
+		visit(startCell, 0.0f, startCell);
+		push(startCell, heuristic(startCell, goalColumn, goalRow));
+		while (heapSize > 0)
+		{
+			int current = pop();
+			if (closed[current] == search)
+			{
+				continue;		// A stale entry; it was reached more cheaply
+			}
+			closed[current] = search;
+			if (current == goalCell)
+			{
+				return true;
+			}
+
+			int c = current % columns;
+			int r = current / columns;
+			for (int k = 0; k < STEP_COLUMN.length; ++k)
+			{
+				int nc = c + STEP_COLUMN[k];
+				int nr = r + STEP_ROW[k];
+				if (nc < 0 || nc >= columns || nr < 0 || nr >= rows)
+				{
+					continue;
+				}
+				int next = nr * columns + nc;
+				if (closed[next] == search || ! passable(next))
+				{
+					continue;
+				}
+				double length = (k < 4) ? CELL_m : CELL_m * SQRT2;
+				double spare = Math.max(0.0, PREFERRED_CLEARANCE_m - clearance[next]) / PREFERRED_CLEARANCE_m;
+				float cost = g[current] + (float)(length * (1.0 + CLEARANCE_COST * spare));
+				if (visited[next] != search || cost < g[next])
+				{
+					visit(next, cost, current);
+					push(next, cost + heuristic(next, goalColumn, goalRow));
+				}
+			}
+		}
+		return false;
+	}
+
+	private void visit(int cell, float cost, int from)
+	{
+		visited[cell] = search;
+		g[cell] = cost;
+		parent[cell] = from;
+	}
+
+	// Octile distance (m), never more than the true cost
+	private float heuristic(int cell, int goalColumn, int goalRow)
+	{
+		int dc = Math.abs(cell % columns - goalColumn);
+		int dr = Math.abs(cell / columns - goalRow);
+		return (float)(CELL_m * (Math.max(dc, dr) + (SQRT2 - 1.0) * Math.min(dc, dr)));
+	}
+
+	/**
+	 * @return true if every cell on the straight line between two cells is passable
+	 */
+	private boolean inView(int a, int b)
+	{
+		double x0 = centerX(a), y0 = centerY(a);
+		double x1 = centerX(b), y1 = centerY(b);
+		int steps = (int)Math.ceil(Math.hypot(x1 - x0, y1 - y0) / (CELL_m / 2.0));
+		for (int s = 1; s < steps; ++s)
+		{
+			double f = (double)s / steps;
+			if (! passable(cell(x0 + (x1 - x0) * f, y0 + (y1 - y0) * f)))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Convert field corners to waypoints relative to the start pose
+	 * The last two corners are the approach point and the goal, both headed
+	 * the goal's way. Other corners too close to the start, the approach point,
+	 * or each other are dropped (Pathfinder fits poorly through points that are
+	 * very close together).
+	 */
+	private static Waypoint[] toWaypoints(List<double[]> corners, Pose start, Pose goal)
+	{
+		List<double[]> kept = new ArrayList<>();
+		kept.add(corners.get(0));
+		double[] last = corners.get(corners.size() - 2);
+		for (int i = 1; i < corners.size() - 2; ++i)
+		{
+			double[] p = corners.get(i);
+			double[] prev = kept.get(kept.size() - 1);
+			if (Math.hypot(p[0] - prev[0], p[1] - prev[1]) >= MIN_WAYPOINT_SPACING_m &&
+				Math.hypot(p[0] - last[0], p[1] - last[1]) >= MIN_WAYPOINT_SPACING_m)
+			{
+				kept.add(p);
+			}
+		}
+		kept.add(last);
+		kept.add(corners.get(corners.size() - 1));
+
+		double cos = Math.cos(start.heading);
+		double sin = Math.sin(start.heading);
+		Waypoint[] waypoints = new Waypoint[kept.size()];
+		for (int i = 0; i < kept.size(); ++i)
+		{
+			double[] p = kept.get(i);
+			double heading;
+			if (i == 0)
+			{
+				heading = start.heading;
+			}
+			else if (i >= kept.size() - 2)
+			{
+				heading = goal.heading;
+			}
+			else
+			{
+				// Bisect the turn: the direction of the sum of the unit vectors in and out
+				double[] prev = kept.get(i - 1);
+				double[] next = kept.get(i + 1);
+				double inX = p[0] - prev[0], inY = p[1] - prev[1];
+				double outX = next[0] - p[0], outY = next[1] - p[1];
+				double inLength = Math.hypot(inX, inY), outLength = Math.hypot(outX, outY);
+				heading = Math.atan2(inY / inLength + outY / outLength, inX / inLength + outX / outLength);
+			}
+
+			double dx = p[0] - start.x;
+			double dy = p[1] - start.y;
+			waypoints[i] = new Waypoint( dx * cos + dy * sin,
+					                    -dx * sin + dy * cos,
+					                    Math.IEEEremainder(heading - start.heading, 2.0 * Math.PI));
+		}
+		return waypoints;
+	}
+
+	// ---- Binary heap of cells keyed by f = g + h ----
+
+	private void push(int cell, float key)
+	{
+		if (heapSize == heap.length)
+		{
+			// Stale entries can outnumber the cells; rarely needed
+			heap = Arrays.copyOf(heap, heap.length * 2);
+			heapKey = Arrays.copyOf(heapKey, heapKey.length * 2);
+		}
+		int i = heapSize++;
+		while (i > 0)
+		{
+			int up = (i - 1) / 2;
+			if (heapKey[up] <= key)
+			{
+				break;
+			}
+			heap[i] = heap[up];
+			heapKey[i] = heapKey[up];
+			i = up;
+		}
+		heap[i] = cell;
+		heapKey[i] = key;
+	}
+
+	private int pop()
+	{
+		int top = heap[0];
+		int cell = heap[--heapSize];
+		float key = heapKey[heapSize];
+		int i = 0;
+		while (true)
+		{
+			int child = 2 * i + 1;
+			if (child >= heapSize)
+			{
+				break;
+			}
+			if (child + 1 < heapSize && heapKey[child + 1] < heapKey[child])
+			{
+				++child;
+			}
+			if (heapKey[child] >= key)
+			{
+				break;
+			}
+			heap[i] = heap[child];
+			heapKey[i] = heapKey[child];
+			i = child;
+		}
+		heap[i] = cell;
+		heapKey[i] = key;
+		return top;
+	}
+
+	// ---- Grid coordinates ----
+
+	private boolean passable(int cell)
+	{
+		return clearance[cell] >= minClearance;
+	}
+
+	/**
+	 * @return distance (m) from a field position to the nearest field element or wall
+	 */
+	public double getClearance(double x, double y)
+	{
+		return clearance[cell(x, y)];
+	}
+
+	private int cell(double x, double y)
+	{
+		return row(y) * columns + column(x);
+	}
+
+	private int column(double x)
+	{
+		return Math.max(0, Math.min(columns - 1, (int)Math.floor(x / CELL_m)));
+	}
+
+	private int row(double y)
+	{
+		return Math.max(0, Math.min(rows - 1, (int)Math.floor(y / CELL_m)));
+	}
+
+	private double centerX(int cell)
+	{
+		return (cell % columns + 0.5) * CELL_m;
+	}
+
+	private double centerY(int cell)
+	{
+		return (cell / columns + 0.5) * CELL_m;
+	}
+}
@@ -0,0 +1,157 @@
+package org.usfirst.frc.team4183.utils;
+
+import java.util.Arrays;
+
+/**
+ * Histogram is a fixed-bin histogram for timing statistics (loop jitter,
+ * execution time, etc.)
+ *
+ * The bins are allocated once at construction so recording a sample never
+ * allocates; samples outside [min, max) are counted in the first or last bin
+ * but the true extremes are still tracked. The methods are synchronized so a
+ * loop thread can record while the main loop reads the results.
+ */
+public class Histogram
+{
+	private final String name;
+	private final double min;
+	private final double binWidth;
+	private final long[] bins;
+
+	private long count = 0;
+	private double sum = 0.0;
+	private double smallest = Double.POSITIVE_INFINITY;
+	private double largest = Double.NEGATIVE_INFINITY;
+
+	/**
+	 * @param name used when printed
+	 * @param min lower edge of the first bin
+	 * @param max upper edge of the last bin
+	 * @param numBins number of equal width bins between min and max
+	 */
+	public Histogram(String name, double min, double max, int numBins)
+	{
+		if (numBins < 1 || max <= min)
+		{
+			throw new IllegalArgumentException("Histogram " + name + " needs max > min and at least one bin");
+		}
+		this.name = name;
+		this.min = min;
+		this.binWidth = (max - min) / numBins;
+		this.bins = new long[numBins];
+	}
+
+	public synchronized void record(double value)
+	{
+		int bin = (int)Math.floor((value - min) / binWidth);
+		bin = Math.max(0, Math.min(bins.length - 1, bin));
+		++bins[bin];
+
+		++count;
+		sum += value;
+		smallest = Math.min(smallest, value);
+		largest = Math.max(largest, value);
+	}
+
+	/**
+	 * Add the samples of another histogram with the same bins (e.g., to combine
+	 * results gathered on separate threads)
+	 */
+	public void add(Histogram other)
+	{
+		if (other.bins.length != bins.length || other.min != min || other.binWidth != binWidth)
+		{
+			throw new IllegalArgumentException("Histogram " + other.name + " bins do not match " + name);
+		}
+		long[] otherBins;
+		long otherCount;
+		double otherSum, otherSmallest, otherLargest;
+		synchronized (other)
+		{
+			otherBins = other.bins.clone();
+			otherCount = other.count;
+			otherSum = other.sum;
+			otherSmallest = other.smallest;
+			otherLargest = other.largest;
+		}
+		synchronized (this)
+		{
+			for (int i = 0; i < bins.length; ++i)
+			{
+				bins[i] += otherBins[i];
+			}
+			count += otherCount;
+			sum += otherSum;
+			smallest = Math.min(smallest, otherSmallest);
+			largest = Math.max(largest, otherLargest);
+		}
+	}
+
+	public synchronized void clear()
+	{
+		Arrays.fill(bins, 0);
+		count = 0;
+		sum = 0.0;
+		smallest = Double.POSITIVE_INFINITY;
+		largest = Double.NEGATIVE_INFINITY;
+	}
+
+	public synchronized long getCount()
+	{
+		return count;
+	}
+
+	public synchronized double getMean()
+	{
+		return (count == 0) ? 0.0 : sum / count;
+	}
+
+	public synchronized double getMin()
+	{
+		return (count == 0) ? 0.0 : smallest;
+	}
+
+	public synchronized double getMax()
+	{
+		return (count == 0) ? 0.0 : largest;
+	}
+
+	/**
+	 * @param fraction 0.0 to 1.0 (e.g., 0.99 for the 99th percentile)
+	 * @return upper edge of the bin holding that fraction of the samples,
+	 *         limited to the largest sample seen
+	 */
+	public synchronized double getPercentile(double fraction)
+	{
+		if (count == 0)
+		{
+			return 0.0;
+		}
+		long target = (long)Math.ceil(fraction * count);
+		long seen = 0;
+		for (int i = 0; i < bins.length; ++i)
+		{
+			seen += bins[i];
+			if (seen >= target)
+			{
+				return Math.min(largest, min + (i + 1) * binWidth);
+			}
+		}
+		return largest;
+	}
+
+	/**
+	 * @return copy of the bin counts
+	 */
+	public synchronized long[] getBins()
+	{
+		return bins.clone();
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return String.format("%s: n=%d min=%.3f mean=%.3f p99=%.3f max=%.3f",
+				             name, count, getMin(), getMean(), getPercentile(0.99), getMax());
+	}
+}
@@ -8,25 +8,34 @@ public class LogWriterFactory {
 
 	private int serial = 0;
 	private String fileNameRoot;
+	private final TimeSource time;
 	
 	public LogWriterFactory( String fileNameRoot) {
+		this( fileNameRoot, TimeSource.DEFAULT);
+	}
+	
+	/**
+	 * @param time clock for the line time stamps (ms since the writer was created)
+	 */
+	public LogWriterFactory( String fileNameRoot, TimeSource time) {
 		this.fileNameRoot = fileNameRoot;
+		this.time = time;
 	}
 	
 	public class Writer {
 		
-		private long startMillis;
+		private long startNanos;
 		private PrintWriter pw;
 		
 		private Writer( PrintWriter pw) {
 			this.pw = pw;
-			startMillis = System.currentTimeMillis();
+			startNanos = time.nanoTime();
 		}
 		
 		public void writeLine( String line) {
 			if( pw != null) {
 				String timeStamp = String.format("%6d ", 
-						System.currentTimeMillis() - startMillis);
+						(time.nanoTime() - startNanos) / 1000000L);
 				pw.println( timeStamp + line);
 			}
 		}
@@ -0,0 +1,195 @@
+package org.usfirst.frc.team4183.utils;
+
+/**
+ * PIDFController is a PID plus feedforward controller for loops run on the
+ * roboRIO (ControlLoop or a command's execute)
+ *
+ * 		output = kP*error + kI*integral(error) + kD*d(-measurement)/dt + kF*setpoint
+ *
+ * 		derivative is taken on the measurement (no kick when the setpoint
+ * 		  steps) and low-pass filtered with time constant derivativeTau_sec;
+ * 		  a caller that has a rate sensor (e.g., IMU yaw rate) can pass it instead
+ * 		the integral is only accumulated when |error| <= iZone (if iZone > 0),
+ * 		  is cleared outside it, and is not accumulated while the output is
+ * 		  clamped and the error would drive it further (anti-windup)
+ * 		the output is clamped to [minOutput, maxOutput]
+ *
+ * The gains are an immutable Gains object swapped in with a single volatile
+ * write, so they can be changed from another thread (e.g., the dashboard)
+ * without tearing; update() allocates nothing.
+ *
+ * The controller state is not synchronized; update it from one thread.
+ */
+public class PIDFController
+{
+	/** One complete set of gains and limits; never modified */
+	public static class Gains
+	{
+		public final double kP, kI, kD, kF;
+		public final double iZone;					// 0 for no zone
+		public final double derivativeTau_sec;		// 0 for no filtering
+		public final double minOutput, maxOutput;
+
+		public Gains(double kP, double kI, double kD, double kF,
+				     double iZone, double derivativeTau_sec,
+				     double minOutput, double maxOutput)
+		{
+			if (maxOutput < minOutput)
+			{
+				throw new IllegalArgumentException("PIDF output limits reversed: " + minOutput + " > " + maxOutput);
+			}
+			this.kP = kP;
+			this.kI = kI;
+			this.kD = kD;
+			this.kF = kF;
+			this.iZone = iZone;
+			this.derivativeTau_sec = derivativeTau_sec;
+			this.minOutput = minOutput;
+			this.maxOutput = maxOutput;
+		}
+
+		/** P only, output limited to +/-1 */
+		public Gains(double kP)
+		{
+			this(kP, 0.0, 0.0, 0.0, 0.0, 0.0, -1.0, 1.0);
+		}
+	}
+
+	private volatile Gains gains;
+
+	private double integral = 0.0;
+	private double derivative = 0.0;		// Filtered -d(measurement)/dt
+	private double lastMeasurement = 0.0;
+	private boolean first = true;
+	private double lastOutput = 0.0;
+
+	public PIDFController(Gains gains)
+	{
+		this.gains = gains;
+	}
+
+	/**
+	 * Replace the gains; takes effect at the next update
+	 * The integral is kept, so changing kI mid-run changes its contribution.
+	 */
+	public void setGains(Gains gains)
+	{
+		this.gains = gains;
+	}
+
+	public Gains getGains()
+	{
+		return gains;
+	}
+
+	/**
+	 * Forget the integral and derivative history (e.g., when the loop is restarted)
+	 */
+	public void reset()
+	{
+		integral = 0.0;
+		derivative = 0.0;
+		first = true;
+		lastOutput = 0.0;
+	}
+
+	/**
+	 * One controller step, differentiating the measurement
+	 * @param setpoint desired value
+	 * @param measurement current value
+	 * @param dt_sec time since the last update
+	 * @return the clamped output
+	 */
+	public double update(double setpoint, double measurement, double dt_sec)
+	{
+		Gains g = gains;
+		double rate = 0.0;
+		if (! first && dt_sec > 0.0)
+		{
+			rate = (measurement - lastMeasurement) / dt_sec;
+		}
+		lastMeasurement = measurement;
+
+		// First order low pass on the derivative
+		double alpha = (g.derivativeTau_sec > 0.0) ? dt_sec / (g.derivativeTau_sec + dt_sec) : 1.0;
+		derivative = first ? -rate : derivative + alpha * (-rate - derivative);
+		first = false;
+
+		return step(g, setpoint, measurement, derivative, dt_sec);
+	}
+
+	/**
+	 * One controller step with a measured rate (no differentiation or filtering)
+	 * @param measurementRate d(measurement)/dt from a sensor
+	 */
+	public double update(double setpoint, double measurement, double measurementRate, double dt_sec)
+	{
+		Gains g = gains;
+		lastMeasurement = measurement;
+		derivative = -measurementRate;
+		first = false;
+		return step(g, setpoint, measurement, derivative, dt_sec);
+	}
+
+	private double step(Gains g, double setpoint, double measurement, double derivative, double dt_sec)
+	{
+		double error = setpoint - measurement;
+
+		if (g.iZone > 0.0 && Math.abs(error) > g.iZone)
+		{
+			integral = 0.0;
+		}
+		else if (g.kI != 0.0)
+		{
+			// Don't integrate further into a saturated output
+			boolean saturatedHigh = lastOutput >= g.maxOutput && error > 0.0;
+			boolean saturatedLow = lastOutput <= g.minOutput && error < 0.0;
+			if (! saturatedHigh && ! saturatedLow)
+			{
+				integral += error * dt_sec;
+			}
+		}
+
+		double output = g.kP * error + g.kI * integral + g.kD * derivative + g.kF * setpoint;
+		output = Math.max(g.minOutput, Math.min(g.maxOutput, output));
+		lastOutput = output;
+		return output;
+	}
+
+	public double getIntegral()
+	{
+		return integral;
+	}
+
+	public double getLastOutput()
+	{
+		return lastOutput;
+	}
+
+	/**
+	 * Benchmark: time per update on this machine (run on the roboRIO to see the real cost)
+	 */
+	public static void main(String[] args)
+	{
+		int iterations = (args.length > 0) ? Integer.parseInt(args[0]) : 10000000;
+		PIDFController controller = new PIDFController(new Gains(0.5, 0.1, 0.05, 0.01, 2.0, 0.01, -1.0, 1.0));
+
+		// Simple first order plant so the controller sees realistic values
+		double plant = 0.0;
+		double dt = 0.02;
+		for (int pass = 0; pass < 3; ++pass)		// The first passes warm up the JIT
+		{
+			controller.reset();
+			long start = System.nanoTime();
+			for (int i = 0; i < iterations; ++i)
+			{
+				double setpoint = ((i / 500) & 1) == 0 ? 1.0 : -1.0;
+				double u = controller.update(setpoint, plant, dt);
+				plant += (u - 0.2 * plant) * dt;
+			}
+			long elapsed = System.nanoTime() - start;
+			System.out.format("Pass %d: %d updates, %.1f ns/update (plant %.3f)\n",
+					          pass, iterations, (double)elapsed / iterations, plant);
+		}
+	}
+}
@@ -0,0 +1,329 @@
+package org.usfirst.frc.team4183.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+import org.usfirst.frc.team4183.utils.TrajectoryGenerator.PathSpec;
+
+import edu.wpi.first.wpilibj.DriverStation;
+import jaci.pathfinder.Pathfinder;
+import jaci.pathfinder.Waypoint;
+
+/**
+ * PathLibrary reads path definitions from files so paths can be tuned
+ * without a redeploy
+ *
+ * Files are <name>.path in a "paths" directory under the first of the same
+ * roots the loggers use (/u, /v etc. if a USB stick is plugged in, otherwise
+ * lvuser's home dir) that has one. Each line is one of:
+ * 		# comment (also allowed at the end of a line)
+ * 		x, y, heading_deg			a waypoint in meters and degrees
+ * 		mirror <name> [leftScale rightScale]	reflect another path instead
+ *
+ * Each value may be an arithmetic Expression, e.g.
+ * 		3.222, -1.245+0.3-1*ft, 45
+ *
+ * Every file is parsed once into the index (name to waypoints and the file's
+ * stamp); changed() re-checks the stamps and re-parses only files that changed,
+ * and removed() reports files that have been deleted. A file that fails to
+ * parse is reported and skipped, keeping whatever was there before.
+ */
+public class PathLibrary
+{
+	private static final String SUBDIR = "paths";
+	private static final String SUFFIX = ".path";
+
+	private static class Entry
+	{
+		final PathSpec spec;		// null if the file has never parsed
+		final long lastModified;
+		final long length;
+
+		Entry(PathSpec spec, long lastModified, long length)
+		{
+			this.spec = spec;
+			this.lastModified = lastModified;
+			this.length = length;
+		}
+	}
+
+	private final File dir;
+	private final Map<String, Entry> index = new LinkedHashMap<>();
+	private final Set<String> pendingRemoved = new LinkedHashSet<>();	// Handed back by retry()
+
+	public PathLibrary()
+	{
+		dir = getLibraryDir();
+		System.out.format("Path library using %s\n", dir);
+	}
+
+	/**
+	 * Parse every path file
+	 * @return the paths found, in file name order (empty if there is no library)
+	 */
+	public synchronized List<PathSpec> load()
+	{
+		index.clear();
+		pendingRemoved.clear();
+		return changed();
+	}
+
+	/**
+	 * Re-parse any path file that is new or has changed since the last call
+	 * @return the paths that changed (empty if none)
+	 */
+	public synchronized List<PathSpec> changed()
+	{
+		List<PathSpec> result = new ArrayList<>();
+		if (dir == null)
+		{
+			return result;
+		}
+
+		File[] files = dir.listFiles((d, name) -> name.endsWith(SUFFIX));
+		if (files == null)
+		{
+			return result;
+		}
+		Arrays.sort(files);
+
+		for (File file : files)
+		{
+			String name = file.getName().substring(0, file.getName().length() - SUFFIX.length());
+			Entry entry = index.get(name);
+			if (entry != null && entry.lastModified == file.lastModified() && entry.length == file.length())
+			{
+				continue;
+			}
+			try
+			{
+				PathSpec spec = parse(name, file);
+				index.put(name, new Entry(spec, file.lastModified(), file.length()));
+				result.add(spec);
+			}
+			catch (IOException | IllegalArgumentException e)
+			{
+				DriverStation.reportError("Path file " + file + ": " + e.getMessage(), false);
+				// Remember the stamp so the same error isn't reported every poll
+				index.put(name, new Entry((entry == null) ? null : entry.spec, file.lastModified(), file.length()));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Drop the paths whose files have been deleted from the index
+	 * @return names of the paths removed since the last call (empty if none)
+	 */
+	public synchronized List<String> removed()
+	{
+		List<String> result = new ArrayList<>(pendingRemoved);
+		pendingRemoved.clear();
+		for (Iterator<String> names = index.keySet().iterator(); names.hasNext();)
+		{
+			String name = names.next();
+			if (dir == null || ! new File(dir, name + SUFFIX).isFile())
+			{
+				names.remove();
+				result.add(name);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Hand a change that could not be applied back to the library, so the next
+	 * changed() and removed() report it again
+	 * @param changed paths returned by changed()
+	 * @param removed names returned by removed()
+	 */
+	public synchronized void retry(Collection<PathSpec> changed, Collection<String> removed)
+	{
+		for (PathSpec spec : changed)
+		{
+			Entry entry = index.get(spec.name);
+			if (entry != null)
+			{
+				index.put(spec.name, new Entry(entry.spec, -1L, -1L));		// Stamp no file has
+			}
+		}
+		for (String name : removed)
+		{
+			if (! index.containsKey(name))
+			{
+				pendingRemoved.add(name);
+			}
+		}
+	}
+
+	/**
+	 * @return every path currently in the index
+	 */
+	public synchronized List<PathSpec> getAll()
+	{
+		List<PathSpec> result = new ArrayList<>(index.size());
+		for (Entry entry : index.values())
+		{
+			if (entry.spec != null)
+			{
+				result.add(entry.spec);
+			}
+		}
+		return Collections.unmodifiableList(result);
+	}
+
+	private static PathSpec parse(String name, File file) throws IOException
+	{
+		List<Waypoint> waypoints = new ArrayList<>();
+		PathSpec mirror = null;
+
+		try (BufferedReader reader = new BufferedReader(new FileReader(file)))
+		{
+			String line;
+			int lineNumber = 0;
+			while ((line = reader.readLine()) != null)
+			{
+				++lineNumber;
+				int comment = line.indexOf('#');
+				if (comment >= 0)
+				{
+					line = line.substring(0, comment);
+				}
+				line = line.trim();
+				if (line.isEmpty())
+				{
+					continue;
+				}
+
+				try
+				{
+					if (line.startsWith("mirror"))
+					{
+						String[] words = line.split("\\s+");
+						if (words.length != 2 && words.length != 4)
+						{
+							throw new IllegalArgumentException("expected: mirror <name> [leftScale rightScale]");
+						}
+						double leftScale = (words.length == 4) ? Expression.evaluate(words[2]) : 1.0;
+						double rightScale = (words.length == 4) ? Expression.evaluate(words[3]) : 1.0;
+						mirror = PathSpec.mirror(name, words[1], leftScale, rightScale);
+					}
+					else
+					{
+						String[] values = line.split(",");
+						if (values.length != 3)
+						{
+							throw new IllegalArgumentException("expected: x, y, heading_deg");
+						}
+						waypoints.add(new Waypoint(Expression.evaluate(values[0]),
+								                   Expression.evaluate(values[1]),
+								                   Pathfinder.d2r(Expression.evaluate(values[2]))));
+					}
+				}
+				catch (IllegalArgumentException e)
+				{
+					throw new IllegalArgumentException("line " + lineNumber + ": " + e.getMessage());
+				}
+			}
+		}
+
+		if (mirror != null)
+		{
+			if (! waypoints.isEmpty())
+			{
+				throw new IllegalArgumentException("a mirrored path can't also have waypoints");
+			}
+			return mirror;
+		}
+		if (waypoints.size() < 2)
+		{
+			throw new IllegalArgumentException("a path needs at least two waypoints");
+		}
+		return new PathSpec(name, waypoints.toArray(new Waypoint[waypoints.size()]));
+	}
+
+	/**
+	 * Watcher polls the library and hands any changed and removed paths to a
+	 * consumer
+	 * Changes are only picked up while the robot is disabled; the consumer must
+	 * check again before it swaps anything in (and retry() the change if the
+	 * robot was enabled meanwhile), so a path is never swapped out from under
+	 * a running autonomous.
+	 */
+	public static class Watcher extends Thread
+	{
+		private final PathLibrary library;
+		private final BiConsumer<List<PathSpec>, List<String>> consumer;
+		private final long intervalMillis;
+
+		/**
+		 * @param consumer given the changed paths and the names of the removed ones
+		 */
+		public Watcher(PathLibrary library, BiConsumer<List<PathSpec>, List<String>> consumer, long intervalMillis)
+		{
+			super("PathLibraryWatcher");
+			this.library = library;
+			this.consumer = consumer;
+			this.intervalMillis = intervalMillis;
+			setDaemon(true);
+			setPriority(Thread.MIN_PRIORITY);
+		}
+
+		public void quit()
+		{
+			interrupt();
+		}
+
+		@Override
+		public void run()
+		{
+			while (! isInterrupted())
+			{
+				if (DriverStation.getInstance().isDisabled())
+				{
+					List<String> removed = library.removed();
+					List<PathSpec> changed = library.changed();
+					if (! changed.isEmpty() || ! removed.isEmpty())
+					{
+						consumer.accept(changed, removed);
+					}
+				}
+
+				try {
+					Thread.sleep(intervalMillis);
+				} catch (InterruptedException e) {
+					interrupt();
+				}
+			}
+		}
+	}
+
+	// Potential library directory locations --
+	// /u, /v etc. will exist if USB plugged in;
+	// otherwise use lvuser's home dir
+	// Unlike the log dirs the paths dir is not created; no dir, no library
+	private final String[] roots
+	= new String[] {"/u", "/v", "/x", "/y", "/home/lvuser"};
+
+	private File getLibraryDir() {
+		for( String r : roots) {
+			File dir = new File( r, SUBDIR);
+			if( dir.isDirectory())
+				return dir;
+		}
+		return null;
+	}
+}
@@ -0,0 +1,184 @@
+package org.usfirst.frc.team4183.utils;
+
+import jaci.pathfinder.Trajectory;
+
+/**
+ * PrimitiveTrajectory is a compact, column-oriented copy of a Pathfinder Trajectory
+ *
+ * Pathfinder hands back an array of Segment objects (one object per point, each
+ * with eight doubles and an object header). We only ever walk the points in order
+ * and only need a few of the fields, so each field is held in its own double[]
+ * column instead; the path library then costs a handful of arrays per trajectory
+ * rather than thousands of small objects for the GC to trace.
+ *
+ * Units are the same as Pathfinder (meters, seconds, radians).
+ */
+public class PrimitiveTrajectory
+{
+	public final double[] dt;				// sec
+	public final double[] x;				// m
+	public final double[] y;				// m
+	public final double[] position;			// m, distance along this path
+	public final double[] velocity;			// m/s
+	public final double[] acceleration;		// m/s^2
+	public final double[] heading;			// radians
+
+	// Running sum of dt, built on first use (see timeAfter); volatile so a thread
+	// that sees the array also sees its contents
+	private volatile double[] elapsed;
+
+	public PrimitiveTrajectory(int length)
+	{
+		dt = new double[length];
+		x = new double[length];
+		y = new double[length];
+		position = new double[length];
+		velocity = new double[length];
+		acceleration = new double[length];
+		heading = new double[length];
+	}
+
+	/**
+	 * Convert Pathfinder output into columns (jerk is not carried over)
+	 * @param trajectory from Pathfinder or one of its modifiers
+	 * @return the equivalent PrimitiveTrajectory
+	 */
+	public static PrimitiveTrajectory fromPathfinder(Trajectory trajectory)
+	{
+		int length = trajectory.length();
+		PrimitiveTrajectory result = new PrimitiveTrajectory(length);
+		for (int i = 0; i < length; ++i)
+		{
+			Trajectory.Segment seg = trajectory.segments[i];
+			result.dt[i] = seg.dt;
+			result.x[i] = seg.x;
+			result.y[i] = seg.y;
+			result.position[i] = seg.position;
+			result.velocity[i] = seg.velocity;
+			result.acceleration[i] = seg.acceleration;
+			result.heading[i] = seg.heading;
+		}
+		return result;
+	}
+
+	/**
+	 * Join trajectories end to end as they are run when chained
+	 * Each trajectory's position is offset by where the previous one ended; the
+	 * other columns are copied as is.
+	 * @param parts in the order they run
+	 * @return a new trajectory holding every point of every part
+	 */
+	public static PrimitiveTrajectory concat(PrimitiveTrajectory... parts)
+	{
+		int length = 0;
+		for (PrimitiveTrajectory part : parts)
+		{
+			length += part.length();
+		}
+
+		PrimitiveTrajectory result = new PrimitiveTrajectory(length);
+		int start = 0;
+		double offset = 0.0;
+		for (PrimitiveTrajectory part : parts)
+		{
+			int n = part.length();
+			System.arraycopy(part.dt, 0, result.dt, start, n);
+			System.arraycopy(part.x, 0, result.x, start, n);
+			System.arraycopy(part.y, 0, result.y, start, n);
+			System.arraycopy(part.velocity, 0, result.velocity, start, n);
+			System.arraycopy(part.acceleration, 0, result.acceleration, start, n);
+			System.arraycopy(part.heading, 0, result.heading, start, n);
+			for (int i = 0; i < n; ++i)
+			{
+				result.position[start + i] = offset + part.position[i];
+			}
+			if (n > 0)
+			{
+				offset += part.position[n - 1];
+			}
+			start += n;
+		}
+		return result;
+	}
+
+	/**
+	 * @return a copy reflected left/right about the x-axis (y and heading negated)
+	 */
+	public PrimitiveTrajectory mirrored()
+	{
+		int length = length();
+		PrimitiveTrajectory result = new PrimitiveTrajectory(length);
+		System.arraycopy(dt, 0, result.dt, 0, length);
+		System.arraycopy(x, 0, result.x, 0, length);
+		System.arraycopy(position, 0, result.position, 0, length);
+		System.arraycopy(velocity, 0, result.velocity, 0, length);
+		System.arraycopy(acceleration, 0, result.acceleration, 0, length);
+		for (int i = 0; i < length; ++i)
+		{
+			result.y[i] = -y[i];
+			result.heading[i] = -heading[i];
+		}
+		return result;
+	}
+
+	/**
+	 * @return a copy with the distance, speed, and acceleration multiplied by scale
+	 */
+	public PrimitiveTrajectory scaled(double scale)
+	{
+		int length = length();
+		PrimitiveTrajectory result = new PrimitiveTrajectory(length);
+		System.arraycopy(dt, 0, result.dt, 0, length);
+		System.arraycopy(x, 0, result.x, 0, length);
+		System.arraycopy(y, 0, result.y, 0, length);
+		System.arraycopy(heading, 0, result.heading, 0, length);
+		for (int i = 0; i < length; ++i)
+		{
+			result.position[i] = scale * position[i];
+			result.velocity[i] = scale * velocity[i];
+			result.acceleration[i] = scale * acceleration[i];
+		}
+		return result;
+	}
+
+	public int length()
+	{
+		return dt.length;
+	}
+
+	/**
+	 * @return total time to run the trajectory (sum of all dt)
+	 */
+	public double duration_sec()
+	{
+		return timeAfter(length());
+	}
+
+	/**
+	 * Time to run the first count points, in constant time
+	 * @param count number of points executed (0 to length())
+	 * @return sum of dt over those points (sec)
+	 */
+	public double timeAfter(int count)
+	{
+		if (count <= 0)
+		{
+			return 0.0;
+		}
+		double[] sums = elapsed;
+		if (sums == null)
+		{
+			// The columns are filled after construction, so the running sum is
+			// built on first use; building it twice from two threads is harmless
+			sums = new double[length()];
+			double sum = 0.0;
+			for (int i = 0; i < sums.length; ++i)
+			{
+				sum += dt[i];
+				sums[i] = sum;
+			}
+			elapsed = sums;		// Published only once it is complete
+		}
+		return sums[Math.min(count, sums.length) - 1];
+	}
+}
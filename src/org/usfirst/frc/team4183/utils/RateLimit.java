@@ -2,17 +2,28 @@ package org.usfirst.frc.team4183.utils;
 
 public class RateLimit {
 	
-	private final double maxChangePerMsec;
+	private final TimeSource time;
+	private final double maxChangePerNsec;
 	private double prev = 0.0;
-	private double prevMsec;
+	private long prevNsec;
 	
 	/**
 	 * Constructor
 	 * @param maxChangePerSecond units are per second
 	 */
 	public RateLimit( double maxChangePerSecond) {
-		this.maxChangePerMsec = Math.abs(maxChangePerSecond)/1000.0;
-		prevMsec = System.currentTimeMillis();
+		this( maxChangePerSecond, TimeSource.DEFAULT);
+	}
+	
+	/**
+	 * Constructor
+	 * @param maxChangePerSecond units are per second
+	 * @param time clock used to measure the time between calls
+	 */
+	public RateLimit( double maxChangePerSecond, TimeSource time) {
+		this.time = time;
+		this.maxChangePerNsec = Math.abs(maxChangePerSecond)/1.0e9;
+		prevNsec = time.nanoTime();
 	}
 	
 	public double f( double x) {
@@ -20,12 +31,13 @@ public class RateLimit {
 		double absx = Math.abs(x); 
 		double sgnx = Math.signum(x); 
 
-		double delta = maxChangePerMsec * (System.currentTimeMillis() - prevMsec);     
+		long now = time.nanoTime();
+		double delta = maxChangePerNsec * (now - prevNsec);     
 		if( absx > prev + delta ) 
 			absx = prev + delta; 
 		
 		prev = absx; 
-		prevMsec = System.currentTimeMillis(); 
+		prevNsec = now; 
 
 		return sgnx * absx;
 	}
@@ -1,15 +1,21 @@
 package org.usfirst.frc.team4183.utils;
 
 import edu.wpi.first.wpilibj.Timer;
-import jaci.pathfinder.Trajectory;
 
 public class RobotTrajectory
 {
 	public String name;
-	public Trajectory left;
-	public Trajectory center;
-	public Trajectory right;
+	public PrimitiveTrajectory left;
+	public PrimitiveTrajectory center;
+	public PrimitiveTrajectory right;
+	
+	// Left and right already converted to Talon native units (see buildTalonPoints)
+	public TalonProfilePoints leftPoints;
+	public TalonProfilePoints rightPoints;
 	public int runCount;		// How many time this trajectory is allowed to run (0 stops it)
+	public String key;			// Hash of the generation inputs (see TrajectoryStore)
+	public double generationTime_ms;	// Time to load or generate (see TrajectoryGenerator)
+	public double compressionRatio = 1.0;	// Original / compressed point count (see TrajectoryCompressor)
 	
 	public RobotTrajectory()
 	{
@@ -23,4 +29,73 @@ public class RobotTrajectory
 		
 		System.out.println("Time: " + Timer.getFPGATimestamp() + ": Creating Trajectory: " + name);
 	}
+	
+	/**
+	 * Create the mirror image of this trajectory (reflected left/right)
+	 * The left side of the mirror is this trajectory's right side and vice versa,
+	 * with y and heading negated; nothing is re-fitted.
+	 * @param aName of the mirrored trajectory
+	 * @param leftScale multiplies the distance run by the mirrored left side (1.0 for none)
+	 * @param rightScale multiplies the distance run by the mirrored right side (1.0 for none)
+	 * @return the mirrored trajectory with its Talon points built
+	 */
+	public RobotTrajectory mirror(String aName, double leftScale, double rightScale)
+	{
+		RobotTrajectory result = new RobotTrajectory(aName);
+		result.runCount = runCount;
+		result.compressionRatio = compressionRatio;
+		result.center = center.mirrored();
+		result.left = right.mirrored();
+		result.right = left.mirrored();
+		if (leftScale != 1.0)
+		{
+			result.left = result.left.scaled(leftScale);
+		}
+		if (rightScale != 1.0)
+		{
+			result.right = result.right.scaled(rightScale);
+		}
+		result.buildTalonPoints();
+		return result;
+	}
+	
+	/**
+	 * Create the same path driven backward (the robot faces the other way)
+	 * The path is fitted in the direction of travel, so the robot's left side
+	 * runs the travel path's right side, backward, and vice versa; x, y, and
+	 * heading still describe the path in the direction of travel.
+	 * @return the reversed trajectory with its Talon points built
+	 */
+	public RobotTrajectory reversed()
+	{
+		RobotTrajectory result = new RobotTrajectory(name);
+		result.runCount = runCount;
+		result.key = key;
+		result.compressionRatio = compressionRatio;
+		result.center = center.scaled(-1.0);
+		result.left = right.scaled(-1.0);
+		result.right = left.scaled(-1.0);
+		result.buildTalonPoints();
+		return result;
+	}
+	
+	/**
+	 * @return true if the robot drives this trajectory backward (see reversed)
+	 */
+	public boolean isReversed()
+	{
+		int length = center.length();
+		return length > 0 && center.position[length - 1] < 0.0;
+	}
+	
+	/**
+	 * Convert the left and right sides into Talon native-unit points
+	 * Called once when the trajectory is loaded so that starting a profile
+	 * does not repeat the unit conversions.
+	 */
+	public void buildTalonPoints()
+	{
+		leftPoints = TalonProfilePoints.fromTrajectory(left);
+		rightPoints = TalonProfilePoints.fromTrajectory(right);
+	}
 }
@@ -2,23 +2,29 @@ package org.usfirst.frc.team4183.utils;
 
 public class SettledDetector{
 	
+	private final TimeSource time;
 	private volatile long tlast;
-	private final long msecs; 
+	private final long nsecs; 
 	private final double allowedError; 
 	
 	public SettledDetector(long msecs, double allowedError) {
-		this.msecs = msecs;
+		this(msecs, allowedError, TimeSource.DEFAULT);
+	}
+	
+	public SettledDetector(long msecs, double allowedError, TimeSource time) {
+		this.time = time;
+		this.nsecs = msecs * 1000000L;
 		this.allowedError = allowedError;
-		tlast = System.currentTimeMillis();
+		tlast = time.nanoTime();
 	}
 	
 	public void set(double error) {
 		if (Math.abs(error) >= allowedError) {
-			tlast = System.currentTimeMillis();
+			tlast = time.nanoTime();
 		}		
 	}
 	
 	public boolean isSettled() {
-		return (System.currentTimeMillis() - tlast) > msecs; 
+		return (time.nanoTime() - tlast) > nsecs; 
 	}
 }
@@ -0,0 +1,52 @@
+package org.usfirst.frc.team4183.utils;
+
+/**
+ * SimulatedTimeSource is a clock that only moves when told to
+ *
+ * A simulation (or test) advances it by each step, so timing utilities see
+ * exactly the times the simulation intends, as fast as it can run and the
+ * same on every run.
+ */
+public class SimulatedTimeSource implements TimeSource
+{
+	private volatile long now_ns;
+
+	public SimulatedTimeSource()
+	{
+		this(0L);
+	}
+
+	public SimulatedTimeSource(long start_ns)
+	{
+		now_ns = start_ns;
+	}
+
+	@Override
+	public long nanoTime()
+	{
+		return now_ns;
+	}
+
+	/**
+	 * Move the clock forward
+	 * @param delta_ns must not be negative (the clock is monotonic)
+	 */
+	public synchronized void advance(long delta_ns)
+	{
+		if (delta_ns < 0)
+		{
+			throw new IllegalArgumentException("SimulatedTimeSource cannot go backwards: " + delta_ns + " ns");
+		}
+		now_ns += delta_ns;
+	}
+
+	public void advanceSeconds(double delta_sec)
+	{
+		advance((long)(delta_sec * 1.0e9));
+	}
+
+	public void advanceMillis(long delta_ms)
+	{
+		advance(delta_ms * 1000000L);
+	}
+}
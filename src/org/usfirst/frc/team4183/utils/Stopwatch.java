@@ -7,10 +7,11 @@ public class Stopwatch {
 	
 	private String name;
 	private Reporter reporter;
+	private final TimeSource time;
 	private long startNanos;
 	private List<Double> list = new ArrayList<>();
-	private long lastReport = System.currentTimeMillis();
-	private long reportIntvlMillis = 1000;
+	private long lastReport;
+	private long reportIntvlNanos = 1000000000L;
 	private boolean isRunning = false;
 	
 	public interface Reporter {
@@ -22,13 +23,19 @@ public class Stopwatch {
 	}
 	
 	public Stopwatch( String name, Reporter reporter, int reportIntvlMillis ) {
+		this( name, reporter, reportIntvlMillis, TimeSource.DEFAULT);
+	}
+	
+	public Stopwatch( String name, Reporter reporter, int reportIntvlMillis, TimeSource time ) {
 		this.name = name;
 		this.reporter = reporter;
-		this.reportIntvlMillis = reportIntvlMillis;
+		this.reportIntvlNanos = reportIntvlMillis * 1000000L;
+		this.time = time;
+		this.lastReport = time.nanoTime();
 	}
 	
 	public void start() {
-		startNanos = System.nanoTime();
+		startNanos = time.nanoTime();
 		isRunning = true;
 	}
 	
@@ -37,10 +44,11 @@ public class Stopwatch {
 		if( !isRunning)
 			return;
 		
-		double interval = (System.nanoTime() - startNanos)/1.0e6;
+		long now = time.nanoTime();
+		double interval = (now - startNanos)/1.0e6;
 		list.add(interval);
 		
-		if(System.currentTimeMillis() - lastReport > reportIntvlMillis) {
+		if(now - lastReport > reportIntvlNanos) {
 			double sum = 0.0;
 			for( Double d : list) {
 				sum += d;
@@ -48,7 +56,7 @@ public class Stopwatch {
 			
 			reporter.report(name, Collections.max(list), Collections.min(list), sum/list.size());
 			list.clear();
-			lastReport = System.currentTimeMillis();
+			lastReport = now;
 		}
 	}
 }
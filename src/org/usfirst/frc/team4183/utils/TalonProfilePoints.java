@@ -0,0 +1,96 @@
+package org.usfirst.frc.team4183.utils;
+
+import org.usfirst.frc.team4183.robot.RobotMap;
+
+import com.ctre.phoenix.motion.TrajectoryPoint.TrajectoryDuration;
+
+import edu.wpi.first.wpilibj.DriverStation;
+
+/**
+ * TalonProfilePoints is one side of a trajectory already converted into the
+ * units the Talon motion profile executer wants:
+ * 		position in native ticks
+ * 		velocity in native ticks per 100 ms
+ * 		duration as the Talon's TrajectoryDuration enumeration
+ *
+ * The conversion is done once when the trajectory is loaded so that starting
+ * a profile is nothing more than copying these values into TrajectoryPoints.
+ * The arrays are never handed out, so a built instance cannot be modified.
+ */
+public class TalonProfilePoints
+{
+	private final double[] position;				// native ticks
+	private final double[] velocity;				// native ticks / 100 ms
+	private final TrajectoryDuration[] timeDur;
+
+	private TalonProfilePoints(int length)
+	{
+		position = new double[length];
+		velocity = new double[length];
+		timeDur = new TrajectoryDuration[length];
+	}
+
+	/**
+	 * Convert one side of a trajectory (meters, m/s, sec) into native units
+	 * @param profile left or right side of a RobotTrajectory
+	 * @return the converted points
+	 */
+	public static TalonProfilePoints fromTrajectory(PrimitiveTrajectory profile)
+	{
+		TalonProfilePoints points = new TalonProfilePoints(profile.length());
+		for (int i = 0; i < profile.length(); ++i)
+		{
+			// Motion Profile wants native units for positions and units/100ms for velocity
+			// We do this in two steps for clarity
+			// First, position converted from meters to rotations, and velocity from m/s to RPM
+			double rotations = RobotMap.meter2inch(profile.position[i]) / RobotMap.WHEEL_CIRCUMFERENCE_INCHES;	// inches to rotations
+			double rpm = RobotMap.meter2inch(profile.velocity[i]) / RobotMap.WHEEL_CIRCUMFERENCE_INCHES * 60.0;
+
+			// Second, convert from rotations and RPM to units and units/100ms
+			points.position[i] = rotations * RobotMap.DRIVE_MOTOR_NATIVE_TICKS_PER_REV;		//Convert Revolutions to Units
+			points.velocity[i] = rpm * RobotMap.DRIVE_MOTOR_NATIVE_TICKS_PER_REV / 600.0;	//Convert RPM to Units/100ms
+
+			points.timeDur[i] = getTrajectoryDuration((int)Math.round(profile.dt[i] * 1000));
+		}
+		return points;
+	}
+
+	/**
+	 * Find enum value if supported.
+	 * @param durationMs
+	 * @return enum equivalent of durationMs
+	 */
+	public static TrajectoryDuration getTrajectoryDuration(int durationMs)
+	{
+		/* create return value */
+		TrajectoryDuration retval = TrajectoryDuration.Trajectory_Duration_0ms;
+		/* convert duration to supported type */
+		retval = retval.valueOf(durationMs);
+		/* check that it is valid */
+		if (retval.value != durationMs) {
+			DriverStation.reportError("Trajectory Duration not supported - use configMotionProfileTrajectoryPeriod instead", false);
+		}
+		/* pass to caller */
+		return retval;
+	}
+
+	public int length()
+	{
+		return position.length;
+	}
+
+	public double position(int i)
+	{
+		return position[i];
+	}
+
+	public double velocity(int i)
+	{
+		return velocity[i];
+	}
+
+	public TrajectoryDuration timeDur(int i)
+	{
+		return timeDur[i];
+	}
+}
@@ -0,0 +1,141 @@
+package org.usfirst.frc.team4183.utils;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import edu.wpi.first.wpilibj.smartdashboard.SmartDashboard;
+
+/**
+ * TelemetryPublisher forwards TelemetryRing samples to the SmartDashboard from
+ * its own low priority thread, so control threads never touch NetworkTables
+ *
+ * Every PUBLISH_PERIOD_MS each ring is drained and decimated to
+ * 		the latest value of each channel (key = ring name + channel suffix), and
+ * 		the largest magnitude of the first channel since the last publish
+ * 		  (suffix "Peak"), so short spikes are not lost to the decimation
+ * plus the count of samples the ring had to drop (suffix "Dropped").
+ */
+public class TelemetryPublisher
+{
+	private static final long PUBLISH_PERIOD_MS = 100;
+
+	private static TelemetryPublisher instance;
+
+	/** One ring and what has been drained from it since the last publish */
+	private static class Channel implements TelemetryRing.Consumer
+	{
+		final TelemetryRing ring;
+		final String[] keys;
+		final String peakKey;
+		final String droppedKey;
+		final double[] latest;
+		double peak = 0.0;
+		int samples = 0;
+
+		Channel(TelemetryRing ring, String[] suffixes)
+		{
+			this.ring = ring;
+			this.keys = new String[ring.getWidth()];
+			for (int i = 0; i < keys.length; ++i)
+			{
+				keys[i] = ring.getName() + ((i < suffixes.length) ? suffixes[i] : ("_" + i));
+			}
+			this.peakKey = keys[0] + "Peak";
+			this.droppedKey = ring.getName() + "Dropped";
+			this.latest = new double[keys.length];
+		}
+
+		@Override
+		public void accept(double time_sec, double[] values, int offset)
+		{
+			System.arraycopy(values, offset, latest, 0, latest.length);
+			if (samples == 0 || Math.abs(latest[0]) > Math.abs(peak))
+			{
+				peak = latest[0];
+			}
+			++samples;
+		}
+
+		void publish()
+		{
+			samples = 0;
+			ring.drain(this);
+			if (samples == 0)
+			{
+				return;		// Nothing new (e.g., loop stopped)
+			}
+			for (int i = 0; i < keys.length; ++i)
+			{
+				SmartDashboard.putNumber(keys[i], latest[i]);
+			}
+			SmartDashboard.putNumber(peakKey, peak);
+			SmartDashboard.putNumber(droppedKey, ring.getDropped());
+		}
+	}
+
+	private final List<Channel> channels = new CopyOnWriteArrayList<>();
+
+	private TelemetryPublisher()
+	{
+		Thread thread = new Thread(this::run, "TelemetryPublisher");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+	}
+
+	/**
+	 * @return the publisher (its thread is started on first use)
+	 */
+	public static synchronized TelemetryPublisher getInstance()
+	{
+		if (instance == null)
+		{
+			instance = new TelemetryPublisher();
+		}
+		return instance;
+	}
+
+	/**
+	 * Start publishing a ring
+	 * @param ring the ring (this publisher becomes its only consumer)
+	 * @param suffixes appended to the ring name for each channel's key ("" for the name alone)
+	 */
+	public void add(TelemetryRing ring, String... suffixes)
+	{
+		channels.add(new Channel(ring, suffixes));
+	}
+
+	/**
+	 * Stop publishing a ring
+	 */
+	public void remove(TelemetryRing ring)
+	{
+		channels.removeIf(c -> c.ring == ring);
+	}
+
+	private void run()
+	{
+		while (true)
+		{
+			try
+			{
+				Thread.sleep(PUBLISH_PERIOD_MS);
+			}
+			catch (InterruptedException e)
+			{
+				return;
+			}
+			for (Channel channel : channels)
+			{
+				try
+				{
+					channel.publish();
+				}
+				catch (RuntimeException e)
+				{
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,113 @@
+package org.usfirst.frc.team4183.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * TelemetryRing is a fixed size, lock-free ring of loop samples with exactly
+ * one producer (the control thread) and one consumer (the TelemetryPublisher)
+ *
+ * Each sample is a time plus a fixed number of values, stored in a
+ * preallocated array, so put() never allocates, locks or waits: when the ring
+ * is full the sample is dropped and counted instead. The head and tail indexes
+ * are published with ordered (lazySet) writes, which is all that one producer
+ * and one consumer need to see each other's slots safely.
+ */
+public class TelemetryRing
+{
+	private final String name;
+	private final int width;			// Values per sample
+	private final int mask;
+	private final double[] times;
+	private final double[] values;		// capacity * width, sample-major
+
+	private final AtomicLong head = new AtomicLong(0);	// Next slot to write (producer)
+	private final AtomicLong tail = new AtomicLong(0);	// Next slot to read (consumer)
+	private volatile long dropped = 0;
+
+	/**
+	 * @param name used as the base of the published keys
+	 * @param width number of values in each sample
+	 * @param capacity number of samples held, rounded up to a power of 2
+	 */
+	public TelemetryRing(String name, int width, int capacity)
+	{
+		if (width < 1 || capacity < 1)
+		{
+			throw new IllegalArgumentException("TelemetryRing " + name + " needs a width and capacity of at least 1");
+		}
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity)
+		{
+			size <<= 1;
+		}
+		this.name = name;
+		this.width = width;
+		this.mask = size - 1;
+		this.times = new double[size];
+		this.values = new double[size * width];
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public int getWidth()
+	{
+		return width;
+	}
+
+	/**
+	 * Add a sample (producer thread only)
+	 * @param time_sec when the sample was taken
+	 * @param v1..v4 the first width values (the rest are ignored)
+	 * @return false if the ring was full and the sample was dropped
+	 */
+	public boolean put(double time_sec, double v1, double v2, double v3, double v4)
+	{
+		long h = head.get();
+		if (h - tail.get() > mask)
+		{
+			++dropped;		// Only the producer writes this
+			return false;
+		}
+		int slot = (int)(h & mask);
+		times[slot] = time_sec;
+		int at = slot * width;
+		values[at] = v1;
+		if (width > 1) values[at + 1] = v2;
+		if (width > 2) values[at + 2] = v3;
+		if (width > 3) values[at + 3] = v4;
+		head.lazySet(h + 1);		// Slot contents are visible before the new head
+		return true;
+	}
+
+	/** Receives samples from drain(); values is only valid during the call */
+	public interface Consumer
+	{
+		void accept(double time_sec, double[] values, int offset);
+	}
+
+	/**
+	 * Hand every waiting sample to the consumer, oldest first (consumer thread only)
+	 * @return number of samples drained
+	 */
+	public int drain(Consumer consumer)
+	{
+		long t = tail.get();
+		long h = head.get();
+		for (long i = t; i < h; ++i)
+		{
+			int slot = (int)(i & mask);
+			consumer.accept(times[slot], values, slot * width);
+		}
+		tail.lazySet(h);		// Slots are released only after they are read
+		return (int)(h - t);
+	}
+
+	/** @return number of samples dropped because the consumer fell behind */
+	public long getDropped()
+	{
+		return dropped;
+	}
+}
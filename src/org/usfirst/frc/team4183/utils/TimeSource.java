@@ -0,0 +1,52 @@
+package org.usfirst.frc.team4183.utils;
+
+/**
+ * TimeSource is a monotonic, high resolution clock
+ *
+ * Unlike System.currentTimeMillis() it never jumps (e.g., when the roboRIO
+ * syncs its wall clock to the Driver Station) and has better than millisecond
+ * resolution. Timing utilities take one so the same code can run on
+ * 		FPGATimeSource (the robot), or
+ * 		SimulatedTimeSource (simulations and tests, faster than real time and
+ * 		  repeatable)
+ *
+ * Utilities constructed without one use DEFAULT, which follows setDefault().
+ */
+public interface TimeSource
+{
+	/** @return nanoseconds from an arbitrary origin; only differences are meaningful */
+	long nanoTime();
+
+	default double seconds()
+	{
+		return nanoTime() / 1.0e9;
+	}
+
+	default long millis()
+	{
+		return nanoTime() / 1000000L;
+	}
+
+	/** The process-wide time source, read at each call */
+	TimeSource DEFAULT = () -> Holder.current.nanoTime();
+
+	/**
+	 * Change the process-wide time source (e.g., a simulator installs a
+	 * SimulatedTimeSource before it builds anything that keeps time)
+	 */
+	static void setDefault(TimeSource source)
+	{
+		Holder.current = source;
+	}
+
+	static TimeSource getDefault()
+	{
+		return Holder.current;
+	}
+
+	/** Storage for the current default; use setDefault/getDefault */
+	class Holder
+	{
+		private static volatile TimeSource current = new FPGATimeSource();
+	}
+}
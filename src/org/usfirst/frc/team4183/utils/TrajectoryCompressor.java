@@ -0,0 +1,178 @@
+package org.usfirst.frc.team4183.utils;
+
+/**
+ * TrajectoryCompressor merges runs of points into fewer, longer points
+ *
+ * Pathfinder produces every point at the configured dt, even along straight,
+ * steady sections where the Talon could just as well be given one point with a
+ * longer duration. Fewer points means less CAN traffic and fewer points held in
+ * the Talon buffers.
+ *
+ * A run of points is replaced by its last point (with the sum of their dt) when:
+ * 		the summed duration is one the Talon supports (TrajectoryDuration), and
+ * 		every dropped point on the left, center, and right is within maxError_m
+ * 		of a straight line (in time) from the previous kept point to the new one
+ *
+ * The sides are compressed together (same points dropped on every side) so the
+ * left and right profiles stay in step point for point. Curved or accelerating
+ * sections fail the error test and are left alone.
+ */
+public class TrajectoryCompressor
+{
+	// Point durations the Talon motion profile executer accepts (ms), see TrajectoryDuration
+	private static final int[] SUPPORTED_DURATIONS_MS = {5, 10, 20, 30, 40, 50, 100};
+	private static final int MAX_DURATION_MS = 100;
+
+	private final double maxError_m;
+
+	/**
+	 * @param maxError_m largest position error allowed at any dropped point
+	 */
+	public TrajectoryCompressor(double maxError_m)
+	{
+		this.maxError_m = maxError_m;
+	}
+
+	/**
+	 * Compress the left, center, and right of a trajectory in place
+	 * The compression ratio (original / compressed points) is recorded in the trajectory.
+	 * Any Talon points already built must be rebuilt afterward.
+	 */
+	public void compress(RobotTrajectory trajectory)
+	{
+		int original = trajectory.center.length();
+		int[] keep = selectPoints(trajectory);
+		if (keep.length < original)
+		{
+			trajectory.left = select(trajectory.left, keep);
+			trajectory.center = select(trajectory.center, keep);
+			trajectory.right = select(trajectory.right, keep);
+		}
+		trajectory.compressionRatio = (keep.length == 0) ? 1.0 : (double)original / keep.length;
+	}
+
+	/**
+	 * @return indices of the points to keep (always including the first and last)
+	 */
+	private int[] selectPoints(RobotTrajectory trajectory)
+	{
+		PrimitiveTrajectory center = trajectory.center;
+		int length = center.length();
+		int[] keep = new int[length];
+		int count = 0;
+		if (length == 0)
+		{
+			return keep;
+		}
+
+		keep[count++] = 0;
+		int prev = 0;		// The last point kept
+		int i = 1;
+		while (i < length)
+		{
+			// Find the furthest point we can jump to from prev, dropping everything between
+			int best = i;
+			int duration_ms = 0;
+			for (int j = i; j < length; ++j)
+			{
+				duration_ms += toMs(center.dt[j]);
+				if (duration_ms > MAX_DURATION_MS)
+				{
+					break;
+				}
+				if (! withinError(trajectory.left, prev, j) ||
+					! withinError(trajectory.center, prev, j) ||
+					! withinError(trajectory.right, prev, j))
+				{
+					break;
+				}
+				if (isSupported(duration_ms))
+				{
+					best = j;
+				}
+			}
+			keep[count++] = best;
+			prev = best;
+			i = best + 1;
+		}
+
+		int[] result = new int[count];
+		System.arraycopy(keep, 0, result, 0, count);
+		return result;
+	}
+
+	/**
+	 * @return true if every point strictly between from and to is within maxError_m
+	 *         of the position interpolated (by time) between them
+	 */
+	private boolean withinError(PrimitiveTrajectory profile, int from, int to)
+	{
+		double span_sec = 0.0;
+		for (int k = from + 1; k <= to; ++k)
+		{
+			span_sec += profile.dt[k];
+		}
+		if (span_sec <= 0.0)
+		{
+			return true;
+		}
+
+		double start = profile.position[from];
+		double change = profile.position[to] - start;
+		double t_sec = 0.0;
+		for (int k = from + 1; k < to; ++k)
+		{
+			t_sec += profile.dt[k];
+			double expected = start + change * (t_sec / span_sec);
+			if (Math.abs(profile.position[k] - expected) > maxError_m)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Copy the kept points; each kept point's dt covers the points dropped before it
+	 */
+	private static PrimitiveTrajectory select(PrimitiveTrajectory profile, int[] keep)
+	{
+		PrimitiveTrajectory result = new PrimitiveTrajectory(keep.length);
+		int prev = -1;
+		for (int n = 0; n < keep.length; ++n)
+		{
+			int k = keep[n];
+			double dt = 0.0;
+			for (int m = prev + 1; m <= k; ++m)
+			{
+				dt += profile.dt[m];
+			}
+			result.dt[n] = dt;
+			result.x[n] = profile.x[k];
+			result.y[n] = profile.y[k];
+			result.position[n] = profile.position[k];
+			result.velocity[n] = profile.velocity[k];
+			result.acceleration[n] = profile.acceleration[k];
+			result.heading[n] = profile.heading[k];
+			prev = k;
+		}
+		return result;
+	}
+
+	private static int toMs(double dt_sec)
+	{
+		return (int)Math.round(dt_sec * 1000.0);
+	}
+
+	private static boolean isSupported(int duration_ms)
+	{
+		for (int supported : SUPPORTED_DURATIONS_MS)
+		{
+			if (supported == duration_ms)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+}
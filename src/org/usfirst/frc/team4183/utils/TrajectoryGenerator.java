@@ -0,0 +1,267 @@
+package org.usfirst.frc.team4183.utils;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import jaci.pathfinder.Pathfinder;
+import jaci.pathfinder.Trajectory;
+import jaci.pathfinder.Waypoint;
+import jaci.pathfinder.modifiers.TankModifier;
+
+/**
+ * TrajectoryGenerator turns named waypoint lists into RobotTrajectory objects
+ *
+ * Each path is first looked up in the TrajectoryStore; only paths whose
+ * inputs have changed are run through Pathfinder and the TankModifier.
+ * generateAll() fans the paths out across a fork/join pool (one worker per
+ * core) so the spline fitting runs on both roboRIO cores during init.
+ * Paths that are exact left/right mirrors of another are not fitted at all;
+ * they are reflected from the canonical trajectory once it is ready.
+ */
+public class TrajectoryGenerator
+{
+	/**
+	 * A named list of waypoints to be generated (driven forward or backward),
+	 * or the name of another (canonical) path in the same set to be mirrored left/right
+	 */
+	public static class PathSpec
+	{
+		public final String name;
+		public final Waypoint[] path;
+		public final boolean reversed;		// Driven backward (see RobotTrajectory.reversed)
+
+		public final String mirrorOf;		// null unless mirrored
+		public final double leftScale;		// Bias corrections applied to a mirror
+		public final double rightScale;
+
+		public PathSpec(String name, Waypoint[] path)
+		{
+			this(name, path, false, null, 1.0, 1.0);
+		}
+
+		private PathSpec(String name, Waypoint[] path, boolean reversed, String mirrorOf, double leftScale, double rightScale)
+		{
+			this.name = name;
+			this.path = path;
+			this.reversed = reversed;
+			this.mirrorOf = mirrorOf;
+			this.leftScale = leftScale;
+			this.rightScale = rightScale;
+		}
+
+		/**
+		 * @param name of the mirrored trajectory
+		 * @param mirrorOf name of the canonical path it reflects
+		 * @param leftScale distance correction for the mirror's left side (1.0 for none)
+		 * @param rightScale distance correction for the mirror's right side (1.0 for none)
+		 */
+		public static PathSpec mirror(String name, String mirrorOf, double leftScale, double rightScale)
+		{
+			return new PathSpec(name, null, false, mirrorOf, leftScale, rightScale);
+		}
+
+		/**
+		 * @param name of the trajectory
+		 * @param path waypoints in the direction of travel, from (0,0,0) facing
+		 *        away from the way the robot is facing
+		 */
+		public static PathSpec reversed(String name, Waypoint[] path)
+		{
+			return new PathSpec(name, path, true, null, 1.0, 1.0);
+		}
+	}
+
+	private final Trajectory.Config config;
+	private final double wheelTrack_m;
+	private final TrajectoryStore store;
+	private volatile TrajectoryCompressor compressor;		// null for no compression
+	private volatile TrajectoryRetimer retimer;			// null to keep the Pathfinder timing
+
+	private final ForkJoinPool pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+	public TrajectoryGenerator(Trajectory.Config config, double wheelTrack_m, TrajectoryStore store)
+	{
+		this.config = config;
+		this.wheelTrack_m = wheelTrack_m;
+		this.store = store;
+	}
+
+	/**
+	 * Re-time every generated trajectory so both wheels stay within limits
+	 * The limits are part of the store key, so changing them regenerates the paths.
+	 * @param retimer or null to keep the Pathfinder timing
+	 */
+	public void setRetimer(TrajectoryRetimer retimer)
+	{
+		this.retimer = retimer;
+	}
+
+	/**
+	 * Compress every trajectory after it is loaded or generated
+	 * The store always holds the uncompressed trajectory, so the bound can be
+	 * changed without invalidating it.
+	 * @param maxError_m position error allowed by the compression; 0 to disable
+	 */
+	public void setCompression(double maxError_m)
+	{
+		compressor = (maxError_m > 0.0) ? new TrajectoryCompressor(maxError_m) : null;
+	}
+
+	/**
+	 * Load the named trajectory from the store, or generate it (and save it)
+	 * if the stored copy is missing or was generated from different inputs.
+	 * Safe to call from any thread.
+	 */
+	public RobotTrajectory generate(String name, Waypoint[] path)
+	{
+		long startNanos = System.nanoTime();
+		TrajectoryRetimer activeRetimer = retimer;
+		String key = computeKey(path, activeRetimer);
+
+		String source = "loaded";
+		RobotTrajectory trajectory = store.load(name, key);
+		if (trajectory == null)
+		{
+			source = "generated";
+			trajectory = fit(name, path, key, activeRetimer);
+			if (! store.save(trajectory))
+			{
+				System.out.println("Unable to store trajectory: " + name);
+			}
+		}
+
+		TrajectoryCompressor activeCompressor = compressor;
+		if (activeCompressor != null)
+		{
+			activeCompressor.compress(trajectory);
+		}
+
+		// Stored or generated, the Talon points are always built here so that
+		// starting a profile only has to stream them
+		trajectory.buildTalonPoints();
+
+		trajectory.generationTime_ms = (System.nanoTime() - startNanos) / 1.0e6;
+		System.out.format("Trajectory %s %s in %.1f ms on %s (%d points, compression %.2f:1)\n",
+				          name, source, trajectory.generationTime_ms, Thread.currentThread().getName(),
+				          trajectory.center.length(), trajectory.compressionRatio);
+		return trajectory;
+	}
+
+	/**
+	 * Write the stored (uncompressed) trajectory for a path again, generating
+	 * it if the store has no current copy (e.g., after the store was cleared)
+	 * @return false if it could not be saved
+	 */
+	public boolean save(String name, Waypoint[] path)
+	{
+		TrajectoryRetimer activeRetimer = retimer;
+		String key = computeKey(path, activeRetimer);
+		RobotTrajectory trajectory = store.load(name, key);
+		if (trajectory == null)
+		{
+			trajectory = fit(name, path, key, activeRetimer);
+		}
+		return store.save(trajectory);
+	}
+
+	private String computeKey(Waypoint[] path, TrajectoryRetimer activeRetimer)
+	{
+		return (activeRetimer == null) ? TrajectoryStore.computeKey(path, config, wheelTrack_m)
+				                       : TrajectoryStore.computeKey(path, config, wheelTrack_m, activeRetimer.getLimits());
+	}
+
+	/**
+	 * Run a path through Pathfinder, the TankModifier and the retimer
+	 * @return the trajectory as it is stored (not compressed, no Talon points)
+	 */
+	private RobotTrajectory fit(String name, Waypoint[] path, String key, TrajectoryRetimer activeRetimer)
+	{
+		RobotTrajectory trajectory = new RobotTrajectory(name);
+		trajectory.key = key;
+		Trajectory center = Pathfinder.generate(path, config);
+
+		// We don't need to store the modifier persistently
+		TankModifier modifier = new TankModifier(center).modify(wheelTrack_m);
+
+		// Extract the right and left trajectories; the Segment objects
+		// are dropped as soon as the columns have been filled
+		trajectory.center = PrimitiveTrajectory.fromPathfinder(center);
+		trajectory.left = PrimitiveTrajectory.fromPathfinder(modifier.getLeftTrajectory());
+		trajectory.right = PrimitiveTrajectory.fromPathfinder(modifier.getRightTrajectory());
+
+		if (activeRetimer != null)
+		{
+			activeRetimer.retime(trajectory);
+		}
+		return trajectory;
+	}
+
+	/**
+	 * Generate every path in parallel and wait for all of them to complete
+	 * A path that fails to generate, or that mirrors a path that isn't fitted
+	 * in the same set (unknown, failed, or itself a mirror), is reported and
+	 * left out; the rest are still returned.
+	 * @param specs the paths to generate
+	 * @return an unmodifiable map of name to trajectory in the order given;
+	 *         nothing is returned until every path is ready so callers can
+	 *         publish the whole set at once
+	 */
+	public Map<String, RobotTrajectory> generateAll(List<PathSpec> specs)
+	{
+		// Fit the canonical paths in parallel
+		Map<String, ForkJoinTask<RobotTrajectory>> tasks = new LinkedHashMap<>();
+		for (PathSpec spec : specs)
+		{
+			if (spec.mirrorOf == null)
+			{
+				tasks.put(spec.name, pool.submit(() -> spec.reversed ? generate(spec.name, spec.path).reversed() 
+						                                             : generate(spec.name, spec.path)));
+			}
+		}
+
+		Map<String, RobotTrajectory> trajectories = new LinkedHashMap<>();
+		for (PathSpec spec : specs)
+		{
+			if (spec.mirrorOf == null)
+			{
+				try
+				{
+					trajectories.put(spec.name, tasks.get(spec.name).join());
+				}
+				catch (RuntimeException e)
+				{
+					System.out.println("Path " + spec.name + " failed to generate: " + e);
+				}
+			}
+		}
+		for (PathSpec spec : specs)
+		{
+			if (spec.mirrorOf != null)
+			{
+				RobotTrajectory canonical = trajectories.get(spec.mirrorOf);
+				if (canonical == null || ! tasks.containsKey(spec.mirrorOf))
+				{
+					System.out.println("Path " + spec.name + " mirrors " + spec.mirrorOf + ", which is not a generated path");
+					continue;
+				}
+				trajectories.put(spec.name, canonical.mirror(spec.name, spec.leftScale, spec.rightScale));
+			}
+		}
+
+		// Back in the order given
+		Map<String, RobotTrajectory> ordered = new LinkedHashMap<>();
+		for (PathSpec spec : specs)
+		{
+			RobotTrajectory trajectory = trajectories.get(spec.name);
+			if (trajectory != null)
+			{
+				ordered.put(spec.name, trajectory);
+			}
+		}
+		return Collections.unmodifiableMap(ordered);
+	}
+}
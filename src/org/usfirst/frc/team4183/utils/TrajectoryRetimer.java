@@ -0,0 +1,301 @@
+package org.usfirst.frc.team4183.utils;
+
+/**
+ * TrajectoryRetimer re-parameterizes a tank trajectory in time so that the
+ * left and right wheels, not just the center, stay within velocity and
+ * acceleration limits
+ *
+ * Pathfinder limits the center of the robot; the TankModifier then offsets the
+ * path by half the wheel track on each side. In a tight arc the outer wheel
+ * travels further than the center in the same time and can be asked for more
+ * speed than the drive has, so the Talons saturate and fall behind.
+ *
+ * The geometry (x, y, heading, and the distance each wheel travels) is kept;
+ * only the speed along the path is recomputed:
+ * 		at each point the ratio of wheel travel to center travel gives the
+ * 		  largest center speed and acceleration that keep both wheels in limits
+ * 		a forward pass limits acceleration and a backward pass limits
+ * 		  deceleration (the usual time-optimal profile along a fixed path)
+ * 		the result is resampled to a uniform dt for the Talon
+ *
+ * The effect of a changing turn rate on wheel acceleration is not modeled; the
+ * acceleration limits should be set with a little margin.
+ *
+ * Trajectories that are chained (run back to back) can be re-timed as one
+ * path (see retimeChain), so the speed carries across the seam between them
+ * instead of every part stopping at its end.
+ */
+public class TrajectoryRetimer
+{
+	private final double dt_sec;
+	private final double maxCenterVelocity;		// m/s
+	private final double maxCenterAcceleration;	// m/s^2
+	private final double maxWheelVelocity;		// m/s
+	private final double maxWheelAcceleration;	// m/s^2
+
+	public TrajectoryRetimer(double dt_sec,
+			                 double maxCenterVelocity, double maxCenterAcceleration,
+			                 double maxWheelVelocity, double maxWheelAcceleration)
+	{
+		this.dt_sec = dt_sec;
+		this.maxCenterVelocity = maxCenterVelocity;
+		this.maxCenterAcceleration = maxCenterAcceleration;
+		this.maxWheelVelocity = maxWheelVelocity;
+		this.maxWheelAcceleration = maxWheelAcceleration;
+	}
+
+	/**
+	 * @return the limits, in a fixed order, for keying stored trajectories
+	 */
+	public double[] getLimits()
+	{
+		return new double[] {dt_sec, maxCenterVelocity, maxCenterAcceleration, maxWheelVelocity, maxWheelAcceleration};
+	}
+
+	/**
+	 * Replace the center, left, and right of the trajectory with re-timed copies
+	 */
+	public void retime(RobotTrajectory trajectory)
+	{
+		PrimitiveTrajectory center = trajectory.center;
+		PrimitiveTrajectory left = trajectory.left;
+		PrimitiveTrajectory right = trajectory.right;
+		int n = center.length();
+		if (n < 2)
+		{
+			return;
+		}
+
+		// Largest wheel travel per unit of center travel at each point
+		// (taken over the segments on both sides of the point)
+		double[] ratio = new double[n];
+		for (int i = 1; i < n; ++i)
+		{
+			double ds = center.position[i] - center.position[i-1];
+			double r = 1.0;
+			if (ds > 1.0e-9)
+			{
+				r = Math.max(Math.abs(left.position[i] - left.position[i-1]),
+						     Math.abs(right.position[i] - right.position[i-1])) / ds;
+			}
+			ratio[i] = Math.max(ratio[i], r);
+			ratio[i-1] = Math.max(ratio[i-1], r);
+		}
+
+		// Speed limit at each point, then the forward (acceleration) and
+		// backward (deceleration) passes
+		double[] v = new double[n];
+		for (int i = 0; i < n; ++i)
+		{
+			v[i] = Math.min(maxCenterVelocity, maxWheelVelocity / ratio[i]);
+		}
+		v[0] = Math.min(v[0], Math.abs(center.velocity[0]));
+		v[n-1] = Math.min(v[n-1], Math.abs(center.velocity[n-1]));
+		for (int i = 1; i < n; ++i)
+		{
+			double ds = center.position[i] - center.position[i-1];
+			double a = accelerationLimit(Math.max(ratio[i-1], ratio[i]));
+			v[i] = Math.min(v[i], Math.sqrt(v[i-1] * v[i-1] + 2.0 * a * ds));
+		}
+		for (int i = n - 2; i >= 0; --i)
+		{
+			double ds = center.position[i+1] - center.position[i];
+			double a = accelerationLimit(Math.max(ratio[i], ratio[i+1]));
+			v[i] = Math.min(v[i], Math.sqrt(v[i+1] * v[i+1] + 2.0 * a * ds));
+		}
+
+		// Time at each point (constant acceleration between points)
+		double[] t = new double[n];
+		for (int i = 1; i < n; ++i)
+		{
+			double ds = center.position[i] - center.position[i-1];
+			double vSum = v[i-1] + v[i];
+			double step = 0.0;
+			if (ds > 0.0)
+			{
+				step = (vSum > 1.0e-6) ? 2.0 * ds / vSum
+						               : Math.sqrt(2.0 * ds / accelerationLimit(ratio[i]));
+			}
+			t[i] = t[i-1] + step;
+		}
+
+		// Resample at the uniform dt; the last point holds the end of the path
+		int m = (int)Math.ceil(t[n-1] / dt_sec) + 1;
+		PrimitiveTrajectory newCenter = new PrimitiveTrajectory(m);
+		PrimitiveTrajectory newLeft = new PrimitiveTrajectory(m);
+		PrimitiveTrajectory newRight = new PrimitiveTrajectory(m);
+
+		int j = 1;
+		for (int k = 0; k < m; ++k)
+		{
+			double tk = Math.min(k * dt_sec, t[n-1]);
+			while (j < n - 1 && t[j] < tk)
+			{
+				++j;
+			}
+
+			// Where we are within segment j-1 to j
+			double span = t[j] - t[j-1];
+			double tau = tk - t[j-1];
+			double a = (span > 0.0) ? (v[j] - v[j-1]) / span : 0.0;
+			double ds = center.position[j] - center.position[j-1];
+			double s = v[j-1] * tau + 0.5 * a * tau * tau;
+			double f = (ds > 0.0) ? Math.max(0.0, Math.min(1.0, s / ds)) : 1.0;
+			double speed = v[j-1] + a * tau;
+
+			resample(center, newCenter, j, k, f, speed, a, 1.0);
+			resample(left, newLeft, j, k, f, speed, a, sideRatio(left, center, j));
+			resample(right, newRight, j, k, f, speed, a, sideRatio(right, center, j));
+		}
+
+		trajectory.center = newCenter;
+		trajectory.left = newLeft;
+		trajectory.right = newRight;
+	}
+
+	/**
+	 * Re-time trajectories that are run back to back (see
+	 * MotionProfileDriver.chainTrajectory) as a single path, so the speed
+	 * carries across each seam rather than ramping down to zero at the end of
+	 * one part and back up at the start of the next
+	 * Each part must start where the one before it ended, heading the same way
+	 * (Pathfinder paths end straight, so parts drawn to meet do). Where the
+	 * direction of travel changes (a reversed part next to a forward one) the
+	 * robot has to stop, so the parts on either side are re-timed separately.
+	 * @param parts in the order they run
+	 * @return re-timed copies of the parts, in order and with the same names
+	 *         (Talon points not built); positions in each still start from zero
+	 */
+	public RobotTrajectory[] retimeChain(RobotTrajectory... parts)
+	{
+		RobotTrajectory[] result = new RobotTrajectory[parts.length];
+		int first = 0;
+		while (first < parts.length)
+		{
+			boolean reversed = parts[first].isReversed();
+			int end = first + 1;
+			while (end < parts.length && parts[end].isReversed() == reversed)
+			{
+				++end;
+			}
+			retimeRun(parts, first, end, reversed, result);
+			first = end;
+		}
+		return result;
+	}
+
+	/**
+	 * Re-time parts [first, end), which all run the same way, as one path
+	 */
+	private void retimeRun(RobotTrajectory[] parts, int first, int end, boolean reversed, RobotTrajectory[] result)
+	{
+		// Join the parts end to end, turned forward since the re-timing works
+		// along increasing distance, and note the center distance at each seam
+		double sign = reversed ? -1.0 : 1.0;
+		int count = end - first;
+		PrimitiveTrajectory[] centers = new PrimitiveTrajectory[count];
+		PrimitiveTrajectory[] lefts = new PrimitiveTrajectory[count];
+		PrimitiveTrajectory[] rights = new PrimitiveTrajectory[count];
+		double[] seams = new double[count];
+		double distance = 0.0;
+		for (int i = 0; i < count; ++i)
+		{
+			RobotTrajectory part = parts[first + i];
+			centers[i] = part.center.scaled(sign);
+			lefts[i] = part.left.scaled(sign);
+			rights[i] = part.right.scaled(sign);
+			int n = centers[i].length();
+			distance += (n > 0) ? centers[i].position[n - 1] : 0.0;
+			seams[i] = distance;
+		}
+		RobotTrajectory joined = new RobotTrajectory();
+		joined.center = PrimitiveTrajectory.concat(centers);
+		joined.left = PrimitiveTrajectory.concat(lefts);
+		joined.right = PrimitiveTrajectory.concat(rights);
+		retime(joined);
+
+		// Split it again at the seams
+		int from = 0;
+		int length = joined.center.length();
+		for (int i = 0; i < count; ++i)
+		{
+			int to = length;
+			if (i < count - 1)
+			{
+				to = from;
+				while (to < length && joined.center.position[to] < seams[i])
+				{
+					++to;
+				}
+			}
+			RobotTrajectory part = parts[first + i];
+			RobotTrajectory piece = new RobotTrajectory(part.name);
+			piece.runCount = part.runCount;
+			piece.key = part.key;
+			piece.center = slice(joined.center, from, to, sign);
+			piece.left = slice(joined.left, from, to, sign);
+			piece.right = slice(joined.right, from, to, sign);
+			result[first + i] = piece;
+			from = to;
+		}
+	}
+
+	/**
+	 * @return points [from, to) with the distance measured from the point
+	 *         before them, turned back to the direction given by sign
+	 */
+	private static PrimitiveTrajectory slice(PrimitiveTrajectory in, int from, int to, double sign)
+	{
+		int n = to - from;
+		double base = (from > 0) ? in.position[from - 1] : 0.0;
+		PrimitiveTrajectory out = new PrimitiveTrajectory(n);
+		System.arraycopy(in.dt, from, out.dt, 0, n);
+		System.arraycopy(in.x, from, out.x, 0, n);
+		System.arraycopy(in.y, from, out.y, 0, n);
+		System.arraycopy(in.heading, from, out.heading, 0, n);
+		for (int k = 0; k < n; ++k)
+		{
+			out.position[k] = sign * (in.position[from + k] - base);
+			out.velocity[k] = sign * in.velocity[from + k];
+			out.acceleration[k] = sign * in.acceleration[from + k];
+		}
+		return out;
+	}
+
+	private double accelerationLimit(double ratio)
+	{
+		return Math.min(maxCenterAcceleration, maxWheelAcceleration / ratio);
+	}
+
+	/**
+	 * @return signed side travel per unit of center travel over segment j-1 to j
+	 */
+	private static double sideRatio(PrimitiveTrajectory side, PrimitiveTrajectory center, int j)
+	{
+		double ds = center.position[j] - center.position[j-1];
+		return (ds > 1.0e-9) ? (side.position[j] - side.position[j-1]) / ds : 1.0;
+	}
+
+	/**
+	 * Fill point k of the output at fraction f of the way from point j-1 to j of the input
+	 */
+	private void resample(PrimitiveTrajectory in, PrimitiveTrajectory out, int j, int k,
+			              double f, double centerSpeed, double centerAcceleration, double sideRatio)
+	{
+		out.dt[k] = dt_sec;
+		out.x[k] = lerp(in.x[j-1], in.x[j], f);
+		out.y[k] = lerp(in.y[j-1], in.y[j], f);
+		out.position[k] = lerp(in.position[j-1], in.position[j], f);
+		out.velocity[k] = centerSpeed * sideRatio;
+		out.acceleration[k] = centerAcceleration * sideRatio;
+
+		// Heading can wrap, so interpolate along the shorter way around
+		double dh = Math.IEEEremainder(in.heading[j] - in.heading[j-1], 2.0 * Math.PI);
+		out.heading[k] = in.heading[j-1] + dh * f;
+	}
+
+	private static double lerp(double a, double b, double f)
+	{
+		return a + (b - a) * f;
+	}
+}
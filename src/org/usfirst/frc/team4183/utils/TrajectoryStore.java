@@ -0,0 +1,255 @@
+package org.usfirst.frc.team4183.utils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import jaci.pathfinder.Trajectory;
+import jaci.pathfinder.Waypoint;
+
+/**
+ * TrajectoryStore is a versioned binary cache of generated trajectories
+ * kept on the roboRIO flash.
+ *
+ * Each file is keyed by a hash of everything that went into generating
+ * the trajectory (waypoints, Trajectory.Config, wheel track, and re-timing
+ * limits). If the key
+ * in the file does not match the key of the current inputs the file is
+ * considered stale and the caller must regenerate (and re-save) the trajectory.
+ *
+ * File layout (all big-endian via DataOutputStream):
+ * 		int    MAGIC
+ * 		int    FORMAT_VERSION
+ * 		UTF    key
+ * 		UTF    name
+ * 		int    number of segments (same for center, left, right)
+ * 		center, left, right; each is 7 columns of doubles in the order:
+ * 			dt, x, y, position, velocity, acceleration, heading
+ */
+public class TrajectoryStore
+{
+	private static final int MAGIC = 0x54524A31;		// "TRJ1"
+
+	// Bump this whenever the file layout or the generation pipeline changes
+	// in a way that is not captured by the inputs hashed into the key
+	public static final int FORMAT_VERSION = 3;
+
+	private static final String SUBDIR = "trajectories";
+	private static final String SUFFIX = ".traj";
+
+	private final File dir;
+
+	public TrajectoryStore()
+	{
+		dir = getStoreDir();
+		System.out.format("Trajectory store using %s\n", dir);
+	}
+
+	/**
+	 * Compute the key for a set of generation inputs
+	 * @param path the waypoints
+	 * @param config the Pathfinder configuration
+	 * @param wheelTrack_m the wheel track passed to the TankModifier
+	 * @param processing parameters of any processing after the TankModifier (e.g., re-timing limits)
+	 * @return hex string that changes whenever any of the inputs change
+	 */
+	public static String computeKey(Waypoint[] path, Trajectory.Config config, double wheelTrack_m, double... processing)
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try
+		{
+			out.writeInt(FORMAT_VERSION);
+			out.writeInt(path.length);
+			for (Waypoint w : path)
+			{
+				out.writeDouble(w.x);
+				out.writeDouble(w.y);
+				out.writeDouble(w.angle);
+			}
+			out.writeUTF(config.fit.name());
+			out.writeInt(config.sample_count);
+			out.writeDouble(config.dt);
+			out.writeDouble(config.max_velocity);
+			out.writeDouble(config.max_acceleration);
+			out.writeDouble(config.max_jerk);
+			out.writeDouble(wheelTrack_m);
+			out.flush();
+
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			StringBuilder key = new StringBuilder();
+			for (byte b : digest.digest(bytes.toByteArray()))
+			{
+				key.append(String.format("%02x", b));
+			}
+			return key.toString();
+		}
+		catch (IOException | NoSuchAlgorithmException e)
+		{
+			// Neither can happen with an in-memory stream and a standard algorithm
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Load a trajectory if a file exists with a matching key
+	 * @param name the trajectory name (also the file name)
+	 * @param key the key of the current inputs
+	 * @return the trajectory, or null if missing, stale, or unreadable
+	 */
+	public RobotTrajectory load(String name, String key)
+	{
+		if (dir == null)
+		{
+			return null;
+		}
+
+		File file = new File(dir, name + SUFFIX);
+		if (! file.isFile())
+		{
+			return null;
+		}
+
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file))))
+		{
+			if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION)
+			{
+				return null;
+			}
+			if (! key.equals(in.readUTF()))
+			{
+				return null;
+			}
+			RobotTrajectory trajectory = new RobotTrajectory(in.readUTF());
+			trajectory.key = key;
+
+			int length = in.readInt();
+			trajectory.center = readTrajectory(in, length);
+			trajectory.left   = readTrajectory(in, length);
+			trajectory.right  = readTrajectory(in, length);
+			return trajectory;
+		}
+		catch (IOException e)
+		{
+			System.err.format("Trajectory store: unable to read %s (%s)\n", file, e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Save a trajectory; the file is written to a temporary name, synced to flash,
+	 * and then atomically moved over the old file so that a brown-out at any point
+	 * leaves either the old file or the new one, never a truncated file.
+	 * @param trajectory with name, key, center, left and right filled in
+	 * @return true if the trajectory was written
+	 */
+	public boolean save(RobotTrajectory trajectory)
+	{
+		if (dir == null || trajectory.key == null)
+		{
+			return false;
+		}
+
+		File file = new File(dir, trajectory.name + SUFFIX);
+		File temp = new File(dir, trajectory.name + SUFFIX + ".tmp");
+
+		try (FileOutputStream stream = new FileOutputStream(temp);
+			 DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream)))
+		{
+			out.writeInt(MAGIC);
+			out.writeInt(FORMAT_VERSION);
+			out.writeUTF(trajectory.key);
+			out.writeUTF(trajectory.name);
+			out.writeInt(trajectory.center.length());
+			writeTrajectory(out, trajectory.center);
+			writeTrajectory(out, trajectory.left);
+			writeTrajectory(out, trajectory.right);
+			out.flush();
+			stream.getFD().sync();
+		}
+		catch (IOException e)
+		{
+			System.err.format("Trajectory store: unable to write %s (%s)\n", temp, e.getMessage());
+			temp.delete();
+			return false;
+		}
+
+		try
+		{
+			Files.move(temp.toPath(), file.toPath(),
+					   StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+			return true;
+		}
+		catch (IOException e)
+		{
+			System.err.format("Trajectory store: unable to replace %s (%s)\n", file, e.getMessage());
+			temp.delete();
+			return false;
+		}
+	}
+
+	private static PrimitiveTrajectory readTrajectory(DataInputStream in, int length) throws IOException
+	{
+		PrimitiveTrajectory trajectory = new PrimitiveTrajectory(length);
+		readColumn(in, trajectory.dt);
+		readColumn(in, trajectory.x);
+		readColumn(in, trajectory.y);
+		readColumn(in, trajectory.position);
+		readColumn(in, trajectory.velocity);
+		readColumn(in, trajectory.acceleration);
+		readColumn(in, trajectory.heading);
+		return trajectory;
+	}
+
+	private static void writeTrajectory(DataOutputStream out, PrimitiveTrajectory trajectory) throws IOException
+	{
+		writeColumn(out, trajectory.dt);
+		writeColumn(out, trajectory.x);
+		writeColumn(out, trajectory.y);
+		writeColumn(out, trajectory.position);
+		writeColumn(out, trajectory.velocity);
+		writeColumn(out, trajectory.acceleration);
+		writeColumn(out, trajectory.heading);
+	}
+
+	private static void readColumn(DataInputStream in, double[] column) throws IOException
+	{
+		for (int i = 0; i < column.length; ++i)
+		{
+			column[i] = in.readDouble();
+		}
+	}
+
+	private static void writeColumn(DataOutputStream out, double[] column) throws IOException
+	{
+		for (double value : column)
+		{
+			out.writeDouble(value);
+		}
+	}
+
+	// The store always lives on the roboRIO flash (lvuser's home dir) rather
+	// than on a USB stick so that the cache survives the stick being pulled
+	private static final String ROOT = "/home/lvuser";
+
+	private File getStoreDir() {
+		File root = new File(ROOT);
+		if( root.isDirectory()) {
+			File dir = new File( root, SUBDIR);
+			dir.mkdirs();
+			if(dir.isDirectory())
+				return dir;
+		}
+		return null;
+	}
+}